@@ -0,0 +1,192 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/*
+ * byte pattern search over a ByteBuffer, using absolute gets so the
+ * buffer's position is never touched
+ * Boyer-Moore-Horspool for a single needle, Aho-Corasick for many
+ */
+public class ByteSearch
+{
+    /*
+     * finds the first occurrence of needle in haystack between from and to
+     * returns the absolute index to the start of needle in haystack
+     * returns -1 if not found
+     */
+    public static int find(ByteBuffer haystack, int from, int to, byte[] needle)
+    {
+        if(haystack == null || needle == null || needle.length == 0)
+            return -1;
+
+        from = Math.max(from, 0);
+        to = Math.min(to, haystack.limit());
+        if(to - from < needle.length)
+            return -1;
+
+        // how far the window can move when its last byte is b
+        int last = needle.length - 1;
+        int[] shift = new int[256];
+        Arrays.fill(shift, needle.length);
+        for(int i = 0; i < last; i++)
+            shift[Byte.toUnsignedInt(needle[i])] = last - i;
+
+        for(int i = from; i <= to - needle.length; )
+        {
+            byte b = haystack.get(i + last);
+            if(b == needle[last])
+            {
+                int j = last - 1;
+                while(j >= 0 && haystack.get(i + j) == needle[j])
+                    j--;
+
+                if(j < 0) return i;
+            }
+
+            i += shift[Byte.toUnsignedInt(b)];
+        }
+
+        return -1;
+    }
+
+    public static int find(byte[] haystack, byte[] needle)
+    {
+        if(haystack == null) return -1;
+
+        return find(ByteBuffer.wrap(haystack), 0, haystack.length, needle);
+    }
+
+    /*
+     * Aho-Corasick automaton that finds every needle in a single pass
+     * the automaton is immutable once built, so it can be shared between threads
+     */
+    public static class Multi
+    {
+        public Multi(byte[]... needles)
+        {
+            this.needles = needles.length;
+            this.lengths = new int[needles.length];
+
+            // build the trie, state 0 is the root
+            int max_states = 1;
+            for(int i = 0; i < needles.length; i++)
+            {
+                if(needles[i] == null || needles[i].length == 0)
+                    throw new IllegalArgumentException("ByteSearch.Multi: needle " + i + " is empty");
+
+                max_states += needles[i].length;
+            }
+
+            int[][] trie = new int[max_states][];
+            trie[0] = new_state();
+            int[][] out = new int[max_states][];
+            int states = 1;
+
+            for(int i = 0; i < needles.length; i++)
+            {
+                lengths[i] = needles[i].length;
+                int s = 0;
+                for(byte b : needles[i])
+                {
+                    int c = Byte.toUnsignedInt(b);
+                    if(trie[s][c] == -1)
+                    {
+                        trie[states] = new_state();
+                        trie[s][c] = states++;
+                    }
+                    s = trie[s][c];
+                }
+                out[s] = append(out[s], i);
+            }
+
+            // breadth first, turning the trie into a full DFA and merging outputs along failure links
+            int[] fail = new int[states];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for(int c = 0; c < 256; c++)
+            {
+                if(trie[0][c] == -1) trie[0][c] = 0;
+                else
+                {
+                    fail[trie[0][c]] = 0;
+                    queue.add(trie[0][c]);
+                }
+            }
+
+            while(!queue.isEmpty())
+            {
+                int s = queue.poll();
+                if(out[fail[s]] != null)
+                {
+                    for(int n : out[fail[s]])
+                        out[s] = append(out[s], n);
+                }
+
+                for(int c = 0; c < 256; c++)
+                {
+                    int t = trie[s][c];
+                    if(t == -1) trie[s][c] = trie[fail[s]][c];
+                    else
+                    {
+                        fail[t] = trie[fail[s]][c];
+                        queue.add(t);
+                    }
+                }
+            }
+
+            this.delta = Arrays.copyOf(trie, states);
+            this.outputs = Arrays.copyOf(out, states);
+        }
+
+        /*
+         * returns the absolute offset of the first occurrence of each needle
+         * between from and to, in the order the needles were given
+         * -1 for needles that weren't found
+         */
+        public int[] find_first(ByteBuffer haystack, int from, int to)
+        {
+            int[] found = new int[needles];
+            Arrays.fill(found, -1);
+            int remaining = needles;
+
+            from = Math.max(from, 0);
+            to = Math.min(to, haystack.limit());
+            for(int i = from, s = 0; i < to && remaining > 0; i++)
+            {
+                s = delta[s][Byte.toUnsignedInt(haystack.get(i))];
+                if(outputs[s] == null) continue;
+
+                for(int n : outputs[s])
+                {
+                    if(found[n] == -1)
+                    {
+                        found[n] = i - lengths[n] + 1;
+                        remaining--;
+                    }
+                }
+            }
+
+            return found;
+        }
+
+        private static int[] new_state()
+        {
+            int[] s = new int[256];
+            Arrays.fill(s, -1);
+            return s;
+        }
+
+        private static int[] append(int[] a, int v)
+        {
+            if(a == null) return new int[] { v };
+
+            int[] b = Arrays.copyOf(a, a.length + 1);
+            b[a.length] = v;
+            return b;
+        }
+
+        private final int needles;
+        private final int[] lengths;
+        private final int[][] delta;
+        private final int[][] outputs;
+    }
+}
\ No newline at end of file
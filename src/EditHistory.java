@@ -0,0 +1,156 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * undo/redo journal for a BIOS image that is edited in place
+ * before the first write to a PAGE_SIZE page within a revision, the page is
+ * copied, so a revision only costs the pages it touched and starting one costs nothing
+ * undoing a revision swaps its saved pages with the live ones, which turns it
+ * into the revision that redoes it
+ */
+public class EditHistory
+{
+    public static final int PAGE_SIZE = 4096;
+    public static final int DEFAULT_MAX_REVISIONS = 1000;
+
+    /*
+     * the pages a revision overwrote, as they were before it
+     */
+    static class Revision
+    {
+        final HashMap<Integer, byte[]> pages = new HashMap<>();
+
+        /*
+         * swaps the saved pages with the ones in bios, so applying it again reverts the swap
+         */
+        void swap(ByteBuffer bios)
+        {
+            for(Map.Entry<Integer, byte[]> e : pages.entrySet())
+            {
+                int start = e.getKey() * PAGE_SIZE;
+                byte[] saved = e.getValue();
+                byte[] live = new byte[saved.length];
+                bios.get(start, live);
+                bios.put(start, saved);
+                e.setValue(live);
+            }
+        }
+    }
+
+    public EditHistory()
+    {
+        this(DEFAULT_MAX_REVISIONS);
+    }
+
+    public EditHistory(int max_revisions)
+    {
+        this.max_revisions = max_revisions;
+    }
+
+    /*
+     * called before [start, end) of bios is overwritten
+     * saves every page in the range the current revision hasn't saved yet
+     */
+    void before_write(ByteBuffer bios, int start, int end)
+    {
+        if(current == null)
+        {
+            current = new Revision();
+            // a new edit makes the undone revisions unreachable
+            redo.clear();
+        }
+
+        for(int page = start / PAGE_SIZE; page * PAGE_SIZE < end; page++)
+        {
+            if(current.pages.containsKey(page)) continue;
+
+            int page_start = page * PAGE_SIZE;
+            byte[] copy = new byte[Math.min(PAGE_SIZE, bios.limit() - page_start)];
+            bios.get(page_start, copy);
+            current.pages.put(page, copy);
+        }
+    }
+
+    /*
+     * ends the current revision, the next write starts a new one
+     */
+    public void checkpoint()
+    {
+        if(current == null) return;
+
+        undo.push(current);
+        if(undo.size() > max_revisions)
+            undo.removeLast();
+        current = null;
+    }
+
+    public boolean can_undo()
+    {
+        return current != null || !undo.isEmpty();
+    }
+
+    public boolean can_redo()
+    {
+        return current == null && !redo.isEmpty();
+    }
+
+    /*
+     * reverts the last revision in bios
+     * returns it, now holding the pages that redo it, or null if there is nothing to undo
+     */
+    Revision undo(ByteBuffer bios)
+    {
+        checkpoint();
+        if(undo.isEmpty()) return null;
+
+        Revision revision = undo.pop();
+        revision.swap(bios);
+        redo.push(revision);
+
+        return revision;
+    }
+
+    /*
+     * reapplies the last undone revision in bios
+     * returns it, or null if there is nothing to redo
+     */
+    Revision redo(ByteBuffer bios)
+    {
+        if(!can_redo()) return null;
+
+        Revision revision = redo.pop();
+        revision.swap(bios);
+        undo.push(revision);
+
+        return revision;
+    }
+
+    /*
+     * returns the number of bytes held by saved pages
+     */
+    public long size_in_bytes()
+    {
+        long size = current == null ? 0 : size_of(current);
+        for(Revision r : undo)
+            size += size_of(r);
+        for(Revision r : redo)
+            size += size_of(r);
+
+        return size;
+    }
+
+    private static long size_of(Revision r)
+    {
+        long size = 0;
+        for(byte[] page : r.pages.values())
+            size += page.length;
+
+        return size;
+    }
+
+    private final int max_revisions;
+    private final ArrayDeque<Revision> undo = new ArrayDeque<>(), redo = new ArrayDeque<>();
+    private Revision current;
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+import java.util.Arrays;
+
+/*
+ * hex encoding and decoding to and from arrays the caller owns, so turning
+ * thousands of straps into text and back doesn't allocate per byte or per strap
+ */
+public class Hex
+{
+    /*
+     * writes the 2 * len upper case hex digits of src[src_off, src_off + len) to dst at dst_off
+     * returns the index in dst after the last digit
+     */
+    public static int encode(byte[] src, int src_off, int len, char[] dst, int dst_off)
+    {
+        for(int i = src_off, end = src_off + len; i < end; i++)
+        {
+            int b = src[i] & 0xFF;
+            dst[dst_off++] = DIGITS[b >> 4];
+            dst[dst_off++] = DIGITS[b & 0xF];
+        }
+
+        return dst_off;
+    }
+
+    /*
+     * decodes the hex digits s[start, end) into dst at dst_off, either case is accepted
+     * returns false if there is an odd number of digits or one isn't a hex digit,
+     * dst may be partly written by then
+     */
+    public static boolean decode(CharSequence s, int start, int end, byte[] dst, int dst_off)
+    {
+        if(((end - start) & 1) != 0 || dst_off + (end - start) / 2 > dst.length)
+            return false;
+
+        for(int i = start; i < end; i += 2)
+        {
+            char c_hi = s.charAt(i), c_lo = s.charAt(i + 1);
+            if(c_hi >= 128 || c_lo >= 128) return false;
+
+            int hi = VALUES[c_hi], lo = VALUES[c_lo];
+            if(hi < 0 || lo < 0) return false;
+
+            dst[dst_off++] = (byte)(hi << 4 | lo);
+        }
+
+        return true;
+    }
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+    static
+    {
+        Arrays.fill(VALUES, (byte)-1);
+        for(int i = 0; i < 10; i++)
+            VALUES['0' + i] = (byte)i;
+        for(int i = 0; i < 6; i++)
+        {
+            VALUES['A' + i] = (byte)(10 + i);
+            VALUES['a' + i] = (byte)(10 + i);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * compares two ROMs: the changed byte ranges, which structures they fall in,
+ * and for straps present in both, which timing fields changed
+ * the byte ranges are found in one pass with Arrays.mismatch
+ *
+ * usage: RomDiff A.rom B.rom...
+ * prints one JSON object per B, comparing it to A
+ */
+public class RomDiff
+{
+    // changed ranges closer together than this are reported as one
+    public static final int MERGE_GAP = 16;
+
+    public static class Region
+    {
+        Region(int start, int end, List<String> sections)
+        {
+            this.start = start;
+            this.end = end;
+            this.sections = sections;
+        }
+
+        public final int start, end;
+        public final List<String> sections;     // empty if no known structure covers it
+    }
+
+    public static class FieldChange
+    {
+        FieldChange(StrapField field, int a, int b)
+        {
+            this.field = field;
+            this.a = a;
+            this.b = b;
+        }
+
+        public final StrapField field;
+        public final int a, b;
+    }
+
+    /*
+     * a strap whose ucLatency differs, or that only one of the ROMs has
+     */
+    public static class StrapChange
+    {
+        StrapChange(byte index, int clk_range, boolean in_a, boolean in_b, List<FieldChange> fields)
+        {
+            this.index = index;
+            this.clk_range = clk_range;
+            this.in_a = in_a;
+            this.in_b = in_b;
+            this.fields = fields;
+        }
+
+        public final byte index;
+        public final int clk_range;     // in 10kHz
+        public final boolean in_a, in_b;
+        public final List<FieldChange> fields;
+    }
+
+    public static void main(String[] args)
+    {
+        if(args.length < 2)
+        {
+            System.err.println("usage: RomDiff A.rom B.rom...");
+            System.exit(2);
+        }
+
+        boolean failed = false;
+        try
+        {
+            // a is only parsed once, however many ROMs it is compared to
+            byte[] a = Files.readAllBytes(Paths.get(args[0]));
+            TimingsEditor te_a = new TimingsEditor(a);
+            for(int i = 1; i < args.length; i++)
+            {
+                try
+                {
+                    byte[] b = Files.readAllBytes(Paths.get(args[i]));
+                    System.out.println(diff(a, te_a, b).to_json(args[0], args[i]));
+                }
+                catch(IOException | IllegalArgumentException e)
+                {
+                    System.err.println(args[i] + ": " + e.getMessage());
+                    failed = true;
+                }
+            }
+        }
+        catch(IOException | IllegalArgumentException e)
+        {
+            System.err.println(args[0] + ": " + e.getMessage());
+            failed = true;
+        }
+
+        System.exit(failed ? 1 : 0);
+    }
+
+    /*
+     * compares a to b, neither is modified
+     * throws if either isn't a valid BIOS
+     */
+    public static RomDiff diff(byte[] a, byte[] b) throws IllegalArgumentException
+    {
+        return diff(a, new TimingsEditor(a), b);
+    }
+
+    /*
+     * same as diff(a, b), with te_a an unedited editor of a, so one base
+     * can be compared to many ROMs without parsing it again
+     */
+    public static RomDiff diff(byte[] a, TimingsEditor te_a, byte[] b) throws IllegalArgumentException
+    {
+        TimingsEditor te_b = new TimingsEditor(b);
+
+        RomDiff d = new RomDiff(a.length, b.length);
+        d.map_regions(changed_ranges(a, b), te_a.get_sections());
+        d.compare_straps(te_a.get_strap_table(), te_b.get_strap_table(), te_a.has_strap_fields() && te_b.has_strap_fields());
+
+        return d;
+    }
+
+    /*
+     * returns the [start, end) ranges where a and b differ, as pairs of ints
+     * bytes past the end of the shorter one count as changed
+     */
+    public static int[] changed_ranges(byte[] a, byte[] b)
+    {
+        int n = Math.min(a.length, b.length);
+        int[] ranges = new int[16];
+        int count = 0;
+
+        int i = 0;
+        while(i < n)
+        {
+            int m = Arrays.mismatch(a, i, n, b, i, n);
+            if(m == -1) break;
+
+            int start = i + m, end = start + 1;
+            while(true)
+            {
+                while(end < n && a[end] != b[end])
+                    end++;
+
+                // carry on if the next change is close enough to merge
+                int gap_end = Math.min(n, end + MERGE_GAP);
+                int next = Arrays.mismatch(a, end, gap_end, b, end, gap_end);
+                if(next == -1) break;
+                end += next;
+            }
+
+            if(count + 2 > ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            ranges[count++] = start;
+            ranges[count++] = end;
+            i = end;
+        }
+
+        if(a.length != b.length)
+        {
+            if(count + 2 > ranges.length) ranges = Arrays.copyOf(ranges, ranges.length + 2);
+            if(count > 0 && ranges[count - 1] + MERGE_GAP >= n)
+                ranges[count - 1] = Math.max(a.length, b.length);
+            else
+            {
+                ranges[count++] = n;
+                ranges[count++] = Math.max(a.length, b.length);
+            }
+        }
+
+        return Arrays.copyOf(ranges, count);
+    }
+
+    public String to_json(String name_a, String name_b)
+    {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"a\":");
+        append_string(sb, name_a);
+        sb.append(",\"b\":");
+        append_string(sb, name_b);
+        sb.append(",\"size_a\":").append(size_a).append(",\"size_b\":").append(size_b);
+
+        sb.append(",\"regions\":[");
+        for(int i = 0; i < regions.size(); i++)
+        {
+            Region r = regions.get(i);
+            if(i > 0) sb.append(',');
+            sb.append("{\"start\":").append(r.start).append(",\"end\":").append(r.end).append(",\"sections\":[");
+            for(int j = 0; j < r.sections.size(); j++)
+            {
+                if(j > 0) sb.append(',');
+                append_string(sb, r.sections.get(j));
+            }
+            sb.append("]}");
+        }
+
+        sb.append("],\"straps\":[");
+        for(int i = 0; i < straps.size(); i++)
+        {
+            StrapChange s = straps.get(i);
+            if(i > 0) sb.append(',');
+            sb.append("{\"index\":").append(Byte.toUnsignedInt(s.index))
+              .append(",\"clk_range\":").append(s.clk_range)
+              .append(",\"in_a\":").append(s.in_a).append(",\"in_b\":").append(s.in_b)
+              .append(",\"fields\":[");
+            for(int j = 0; j < s.fields.size(); j++)
+            {
+                FieldChange f = s.fields.get(j);
+                if(j > 0) sb.append(',');
+                sb.append("{\"field\":\"").append(f.field.name())
+                  .append("\",\"a\":").append(Integer.toUnsignedLong(f.a))
+                  .append(",\"b\":").append(Integer.toUnsignedLong(f.b)).append('}');
+            }
+            sb.append("]}");
+        }
+        sb.append("]}");
+
+        return sb.toString();
+    }
+
+    private RomDiff(int size_a, int size_b)
+    {
+        this.size_a = size_a;
+        this.size_b = size_b;
+    }
+
+    /*
+     * names each changed range after the sections of a it overlaps
+     */
+    private void map_regions(int[] ranges, List<TimingsEditor.Section> sections)
+    {
+        int first = 0;
+        for(int i = 0; i < ranges.length; i += 2)
+        {
+            int start = ranges[i], end = ranges[i + 1];
+
+            // ranges and sections are both sorted, so the scan only moves forward
+            while(first < sections.size() && sections.get(first).end <= start)
+                first++;
+
+            ArrayList<String> names = new ArrayList<>();
+            for(int j = first; j < sections.size() && sections.get(j).start < end; j++)
+                names.add(sections.get(j).name);
+
+            regions.add(new Region(start, end, names));
+        }
+    }
+
+    /*
+     * matches straps by (ucIndex, ulClkRange), so moved tables still line up
+     * the changed fields are only listed if fields is set
+     */
+    private void compare_straps(StrapTable a, StrapTable b, boolean fields)
+    {
+        if(a == null || b == null) return;
+
+        byte[] latency_a = new byte[StrapTable.LATENCY_SIZE], latency_b = new byte[StrapTable.LATENCY_SIZE];
+        for(int row = 0; row < a.size(); row++)
+        {
+            int other = b.find(a.get_index(row), a.get_clk_range(row));
+            if(other == -1)
+            {
+                straps.add(new StrapChange(a.get_index(row), a.get_clk_range(row), true, false, new ArrayList<FieldChange>()));
+                continue;
+            }
+            if(a.latency_equals(row, b, other)) continue;
+
+            a.get_latency(row, latency_a);
+            b.get_latency(other, latency_b);
+            ArrayList<FieldChange> changes = new ArrayList<>();
+            for(int i = 0; fields && i < FIELDS.length; i++)
+            {
+                int va = FIELDS[i].get(latency_a), vb = FIELDS[i].get(latency_b);
+                if(va != vb) changes.add(new FieldChange(FIELDS[i], va, vb));
+            }
+            straps.add(new StrapChange(a.get_index(row), a.get_clk_range(row), true, true, changes));
+        }
+
+        for(int row = 0; row < b.size(); row++)
+        {
+            if(a.find(b.get_index(row), b.get_clk_range(row)) == -1)
+                straps.add(new StrapChange(b.get_index(row), b.get_clk_range(row), false, true, new ArrayList<FieldChange>()));
+        }
+    }
+
+    private static void append_string(StringBuilder sb, String s)
+    {
+        try
+        {
+            StrapExport.append_json_string(sb, s);
+        }
+        catch(IOException e)
+        {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final StrapField[] FIELDS = StrapField.values();
+
+    public final int size_a, size_b;
+    public final ArrayList<Region> regions = new ArrayList<>();
+    public final ArrayList<StrapChange> straps = new ArrayList<>();
+}
\ No newline at end of file
@@ -0,0 +1,200 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * finds the PCI expansion ROM images (55AA + PCIR) in a file, which can be a
+ * full SPI flash dump or a hybrid legacy + UEFI GOP ROM
+ * the file is read in CHUNK_SIZE chunks, so only the chunk being scanned and
+ * the ATOM images being patched are ever in the heap
+ */
+public class RomImageScanner
+{
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    // images start on 512 byte boundaries and their lengths are in 512 byte units
+    private static final int BLOCK_SIZE = 512;
+
+    public static final int CODE_TYPE_LEGACY = 0, CODE_TYPE_EFI = 3;
+
+    public static class Image
+    {
+        Image(long offset, int length, int code_type, boolean last, boolean atom)
+        {
+            this.offset = offset;
+            this.length = length;
+            this.code_type = code_type;
+            this.last = last;
+            this.atom = atom;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("0x%08X %7d bytes, code type %d%s%s",
+                offset, length, code_type, atom ? ", ATOM" : "", last ? ", last" : "");
+        }
+
+        public final long offset;
+        public final int length;
+        public final int code_type;
+        public final boolean last;      // last image indicator in the PCIR
+        public final boolean atom;      // legacy image with an ATOM_ROM_HEADER
+    }
+
+    public interface Patcher
+    {
+        /*
+         * edits te, the BIOS of image
+         */
+        void patch(TimingsEditor te, Image image) throws Exception;
+    }
+
+    /*
+     * returns every image in path, in file order
+     */
+    public static List<Image> scan(Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            return scan(channel);
+        }
+    }
+
+    public static List<Image> scan(FileChannel channel) throws IOException
+    {
+        ArrayList<Image> images = new ArrayList<>();
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        long size = channel.size();
+
+        for(long pos = 0; pos + 2 <= size; )
+        {
+            chunk.clear();
+            int n = read_at(channel, chunk, pos);
+            long next = pos + n;
+
+            // only 512 byte boundaries can start an image
+            for(int off = 0; off + 2 <= n; off += BLOCK_SIZE)
+            {
+                if(chunk.get(off) != (byte)0x55 || chunk.get(off + 1) != (byte)0xAA)
+                    continue;
+
+                Image image = read_image(channel, pos + off);
+                if(image == null) continue;
+
+                // carry on straight after the image, without reading its body
+                images.add(image);
+                next = pos + off + round_up(Math.max(image.length, BLOCK_SIZE));
+                break;
+            }
+
+            pos = next;
+        }
+
+        return images;
+    }
+
+    /*
+     * loads each legacy ATOM image in path on its own and hands it to patcher, then
+     * writes only the bytes that changed and the fixed checksum back in place
+     * nothing is written until every image is patched, so a failure part way
+     * leaves the file as it was
+     * returns the number of ATOM images that were patched
+     */
+    public static int patch_all(Path path, Patcher patcher) throws Exception
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            ArrayList<Image> images = new ArrayList<>();
+            ArrayList<TimingsEditor> editors = new ArrayList<>();
+            for(Image image : scan(channel))
+            {
+                if(!image.atom) continue;
+
+                ByteBuffer bytes = ByteBuffer.allocate(image.length);
+                if(read_at(channel, bytes, image.offset) != image.length)
+                    throw new EOFException(String.format("image at 0x%X is truncated", image.offset));
+
+                TimingsEditor te = new TimingsEditor(bytes.array());
+                patcher.patch(te, image);
+                images.add(image);
+                editors.add(te);
+            }
+
+            for(int i = 0; i < editors.size(); i++)
+                editors.get(i).write_dirty_ranges(channel, images.get(i).offset);
+            channel.force(false);
+
+            return editors.size();
+        }
+    }
+
+    /*
+     * parses the image header and PCI data structure at offset
+     * returns null if there isn't a valid image there
+     */
+    private static Image read_image(FileChannel channel, long offset) throws IOException
+    {
+        final int pcir_pointer_offset = 0x18, rom_header_pointer_offset = 0x48;
+
+        ByteBuffer header = ByteBuffer.allocate(rom_header_pointer_offset + 2).order(ByteOrder.LITTLE_ENDIAN);
+        if(read_at(channel, header, offset) < pcir_pointer_offset + 2)
+            return null;
+
+        int pcir_offset = Short.toUnsignedInt(header.getShort(pcir_pointer_offset));
+        ByteBuffer pcir = ByteBuffer.allocate(0x18).order(ByteOrder.LITTLE_ENDIAN);
+        if(pcir_offset == 0 || read_at(channel, pcir, offset + pcir_offset) != pcir.capacity())
+            return null;
+        if(pcir.get(0) != 'P' || pcir.get(1) != 'C' || pcir.get(2) != 'I' || pcir.get(3) != 'R')
+            return null;
+
+        int length = Short.toUnsignedInt(pcir.getShort(0x10)) * BLOCK_SIZE;
+        int code_type = Byte.toUnsignedInt(pcir.get(0x14));
+        boolean last = (pcir.get(0x15) & 0x80) != 0;
+
+        // legacy images also carry their size in 512 byte blocks at offset 2
+        if(length == 0 && code_type == CODE_TYPE_LEGACY)
+            length = Byte.toUnsignedInt(header.get(2)) * BLOCK_SIZE;
+        length = (int)Math.min(length, channel.size() - offset);
+
+        boolean atom = false;
+        if(code_type == CODE_TYPE_LEGACY && header.position() == header.capacity())
+        {
+            int rom_header = Short.toUnsignedInt(header.getShort(rom_header_pointer_offset));
+            ByteBuffer signature = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            atom = rom_header + 8 <= length &&
+                   read_at(channel, signature, offset + rom_header + 4) == 4 &&
+                   signature.getInt(0) == 0x4D4F5441;   // "ATOM"
+        }
+
+        return new Image(offset, length, code_type, last, atom);
+    }
+
+    /*
+     * fills dst from channel starting at position, stopping early only at the end of the file
+     * returns the number of bytes read
+     */
+    private static int read_at(FileChannel channel, ByteBuffer dst, long position) throws IOException
+    {
+        int total = 0;
+        while(dst.hasRemaining())
+        {
+            int n = channel.read(dst, position + total);
+            if(n < 0) break;
+            total += n;
+        }
+
+        return total;
+    }
+
+    private static long round_up(int length)
+    {
+        return (length + BLOCK_SIZE - 1) / BLOCK_SIZE * (long)BLOCK_SIZE;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,312 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * binary delta from one ROM image to another, little endian:
+ *   "RPAT", u16 version, u16 reserved
+ *   u32 base length, u32 target length
+ *   SHA-256 of the base, SHA-256 of the target
+ *   u32 entry count, then for each entry u32 offset, u32 length and the bytes
+ * entries are sorted and don't overlap, the fixed checksum byte is just
+ * another entry, so applying a patch never sums the image
+ * a patch only applies to the exact base it was made from
+ *
+ * usage: RomPatch create BASE.rom TARGET.rom PATCH
+ *        RomPatch apply PATCH (-o DIR | -i) <rom|directory|glob>...
+ *        RomPatch info PATCH
+ */
+public class RomPatch
+{
+    public static final int MAGIC = 0x54415052;     // "RPAT"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 4 + 4 + 32 + 32 + 4, ENTRY_HEADER_SIZE = 8;
+
+    private static final String USAGE =
+        "usage: RomPatch create BASE.rom TARGET.rom PATCH\n" +
+        "       RomPatch apply PATCH (-o DIR | -i) <rom|directory|glob>...\n" +
+        "       RomPatch info PATCH";
+
+    public static void main(String[] args)
+    {
+        try
+        {
+            if(args.length == 4 && args[0].equals("create"))
+            {
+                RomPatch patch = create(Files.readAllBytes(Paths.get(args[1])), Files.readAllBytes(Paths.get(args[2])));
+                patch.write(Paths.get(args[3]));
+                System.out.println(String.format("%d ranges, %d bytes", patch.offsets.length, patch.size_in_bytes()));
+                return;
+            }
+            if(args.length == 2 && args[0].equals("info"))
+            {
+                System.out.print(read(Paths.get(args[1])));
+                return;
+            }
+            if(args.length >= 4 && args[0].equals("apply") && (args[2].equals("-o") || args[2].equals("-i")))
+            {
+                RomPatch patch = read(Paths.get(args[1]));
+                boolean in_place = args[2].equals("-i");
+                Path out_dir = in_place ? null : Paths.get(args[3]);
+                if(out_dir != null) Files.createDirectories(out_dir);
+
+                ArrayList<String> inputs = new ArrayList<>(Arrays.asList(args).subList(in_place ? 3 : 4, args.length));
+                List<Path> roms = TimingsEditorCLI.expand_inputs(inputs);
+                TimingsEditorCLI.check_unique_outputs(roms, out_dir != null);
+
+                int failed = 0;
+                for(Path rom : roms)
+                {
+                    Path out = out_dir == null ? rom : out_dir.resolve(rom.getFileName());
+                    try
+                    {
+                        if(in_place) patch.apply_in_place(rom);
+                        else Files.write(out, patch.apply(Files.readAllBytes(rom)));
+                        System.out.println("OK   " + rom + " -> " + out);
+                    }
+                    catch(IOException | IllegalArgumentException e)
+                    {
+                        System.out.println("FAIL " + rom + ": " + e.getMessage());
+                        failed++;
+                    }
+                }
+                System.exit(failed == 0 ? 0 : 1);
+            }
+        }
+        catch(IOException | IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    /*
+     * the patch from base to target, comparing all of them
+     */
+    public static RomPatch create(byte[] base, byte[] target)
+    {
+        return create(base, target, RomDiff.changed_ranges(base, target));
+    }
+
+    /*
+     * the patch from base to target when they can only differ in ranges,
+     * [start, end) pairs that are sorted and don't overlap, e.g. the dirty ranges of an editor
+     */
+    public static RomPatch create(byte[] base, byte[] target, int[] ranges)
+    {
+        ArrayList<int[]> changed = new ArrayList<>();
+        for(int i = 0; i < ranges.length; i += 2)
+        {
+            int start = ranges[i], end = Math.min(ranges[i + 1], target.length);
+            if(start >= end) continue;
+
+            // past the end of base every byte is new
+            int base_end = Math.min(end, base.length);
+            int[] sub = start < base_end
+                ? RomDiff.changed_ranges(Arrays.copyOfRange(base, start, base_end), Arrays.copyOfRange(target, start, end))
+                : new int[] { 0, end - start };
+            for(int j = 0; j < sub.length; j += 2)
+                changed.add(new int[] { start + sub[j], start + Math.min(sub[j + 1], end - start) });
+        }
+
+        int[] offsets = new int[changed.size()];
+        byte[][] data = new byte[changed.size()][];
+        for(int i = 0; i < offsets.length; i++)
+        {
+            offsets[i] = changed.get(i)[0];
+            data[i] = Arrays.copyOfRange(target, offsets[i], changed.get(i)[1]);
+        }
+
+        return new RomPatch(base.length, target.length, sha256(base), sha256(target), offsets, data);
+    }
+
+    public static RomPatch read(Path path) throws IOException, IllegalArgumentException
+    {
+        return read(Files.readAllBytes(path));
+    }
+
+    /*
+     * throws if bytes isn't a well formed patch
+     */
+    public static RomPatch read(byte[] bytes) throws IllegalArgumentException
+    {
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if(bytes.length < HEADER_SIZE || in.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("not a ROM patch");
+        if(Short.toUnsignedInt(in.getShort(4)) != VERSION)
+            throw new IllegalArgumentException("unsupported ROM patch version " + Short.toUnsignedInt(in.getShort(4)));
+
+        int base_length = in.getInt(8), target_length = in.getInt(12);
+        byte[] base_sha256 = new byte[32], target_sha256 = new byte[32];
+        in.get(16, base_sha256);
+        in.get(48, target_sha256);
+        int count = in.getInt(80);
+        if(base_length < 0 || target_length < 0 || count < 0 || count > (bytes.length - HEADER_SIZE) / ENTRY_HEADER_SIZE)
+            throw new IllegalArgumentException("corrupt ROM patch header");
+
+        int[] offsets = new int[count];
+        byte[][] data = new byte[count][];
+        int position = HEADER_SIZE, end = 0;
+        for(int i = 0; i < count; i++)
+        {
+            if(position + ENTRY_HEADER_SIZE > bytes.length)
+                throw new IllegalArgumentException("ROM patch is truncated");
+
+            int offset = in.getInt(position), length = in.getInt(position + 4);
+            position += ENTRY_HEADER_SIZE;
+            if(offset < end || length <= 0 || length > target_length - offset || length > bytes.length - position)
+                throw new IllegalArgumentException("corrupt ROM patch entry " + i);
+
+            offsets[i] = offset;
+            data[i] = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            end = offset + length;
+        }
+        if(position != bytes.length)
+            throw new IllegalArgumentException("trailing bytes after the ROM patch");
+
+        return new RomPatch(base_length, target_length, base_sha256, target_sha256, offsets, data);
+    }
+
+    public byte[] to_bytes()
+    {
+        ByteBuffer out = ByteBuffer.allocate((int)size_in_bytes()).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putShort((short)VERSION).putShort((short)0);
+        out.putInt(base_length).putInt(target_length);
+        out.put(base_sha256).put(target_sha256);
+        out.putInt(offsets.length);
+        for(int i = 0; i < offsets.length; i++)
+            out.putInt(offsets[i]).putInt(data[i].length).put(data[i]);
+
+        return out.array();
+    }
+
+    public void write(Path path) throws IOException
+    {
+        Files.write(path, to_bytes());
+    }
+
+    /*
+     * the size of the encoded patch
+     */
+    public long size_in_bytes()
+    {
+        long size = HEADER_SIZE;
+        for(byte[] d : data)
+            size += ENTRY_HEADER_SIZE + d.length;
+
+        return size;
+    }
+
+    /*
+     * returns true if rom is the base this patch was made from
+     */
+    public boolean matches(byte[] rom)
+    {
+        return rom.length == base_length && MessageDigest.isEqual(sha256(rom), base_sha256);
+    }
+
+    /*
+     * returns the target image, base isn't modified
+     * throws if base isn't the ROM the patch was made from
+     */
+    public byte[] apply(byte[] base) throws IllegalArgumentException
+    {
+        if(!matches(base))
+            throw new IllegalArgumentException("the ROM isn't the one the patch was made for");
+
+        byte[] target = Arrays.copyOf(base, target_length);
+        for(int i = 0; i < offsets.length; i++)
+            System.arraycopy(data[i], 0, target, offsets[i], data[i].length);
+
+        if(!MessageDigest.isEqual(sha256(target), target_sha256))
+            throw new IllegalArgumentException("the patched ROM doesn't match the patch's target");
+
+        return target;
+    }
+
+    /*
+     * patches the file at rom, writing only the entries once the result is verified
+     */
+    public void apply_in_place(Path rom) throws IOException, IllegalArgumentException
+    {
+        apply(Files.readAllBytes(rom));
+
+        try(FileChannel channel = FileChannel.open(rom, StandardOpenOption.WRITE))
+        {
+            for(int i = 0; i < offsets.length; i++)
+            {
+                ByteBuffer src = ByteBuffer.wrap(data[i]);
+                for(long p = offsets[i]; src.hasRemaining(); )
+                    p += channel.write(src, p);
+            }
+            if(target_length < base_length)
+                channel.truncate(target_length);
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        long changed = 0;
+        for(byte[] d : data)
+            changed += d.length;
+
+        return String.format("base   %d bytes %s%ntarget %d bytes %s%n%d ranges, %d bytes changed, %d bytes encoded%n",
+            base_length, hex(base_sha256), target_length, hex(target_sha256), offsets.length, changed, size_in_bytes());
+    }
+
+    private RomPatch(int base_length, int target_length, byte[] base_sha256, byte[] target_sha256, int[] offsets, byte[][] data)
+    {
+        this.base_length = base_length;
+        this.target_length = target_length;
+        this.base_sha256 = base_sha256;
+        this.target_sha256 = target_sha256;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    private static String hex(byte[] bytes)
+    {
+        char[] chars = new char[2 * bytes.length];
+        Hex.encode(bytes, 0, bytes.length, chars, 0);
+
+        return new String(chars).toLowerCase();
+    }
+
+    /*
+     * package-private, TimingsEditorServer keys its cache with it
+     */
+    static byte[] sha256(byte[] bytes)
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            // every JRE has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public final int base_length, target_length;
+    private final byte[] base_sha256, target_sha256;
+    private final int[] offsets;        // sorted, entry i covers [offsets[i], offsets[i] + data[i].length)
+    private final byte[][] data;
+}
\ No newline at end of file
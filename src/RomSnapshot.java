@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * immutable copy of the image of a TimingsEditor at one point in time, with
+ * the checksum fixed, from TimingsEditor.snapshot()
+ * it shares the layout the editor already parsed, which strap edits don't
+ * change, so reading the straps back doesn't search for anything
+ */
+public class RomSnapshot
+{
+    RomSnapshot(byte[] image, long version, int timings_offset, int strap_count, String[] part_numbers)
+    {
+        this.image = image;
+        this.version = version;
+        this.timings_offset = timings_offset;
+        this.strap_count = strap_count;
+        this.part_numbers = part_numbers;
+    }
+
+    /*
+     * the number of writes to the editor before the snapshot was taken
+     * snapshots of the same editor with the same version hold the same image
+     */
+    public long version()
+    {
+        return version;
+    }
+
+    public int size()
+    {
+        return image.length;
+    }
+
+    public byte get(int offset)
+    {
+        return image[offset];
+    }
+
+    /*
+     * read only, little endian view of the image
+     */
+    public ByteBuffer buffer()
+    {
+        return ByteBuffer.wrap(image).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public byte[] to_bytes()
+    {
+        return image.clone();
+    }
+
+    /*
+     * returns null if the editor didn't find the straps
+     */
+    public StrapTable get_strap_table()
+    {
+        if(timings_offset == -1) return null;
+
+        return TimingsEditor.read_strap_table(buffer(), timings_offset, strap_count);
+    }
+
+    /*
+     * the part number of the RAM IC index, as the editor had it when the snapshot was taken
+     * returns null if there is no such module or it has no part number
+     */
+    public String get_part_number(int index)
+    {
+        if(part_numbers == null || index < 0 || index >= part_numbers.length) return null;
+
+        return part_numbers[index];
+    }
+
+    public void save(Path path) throws IOException
+    {
+        Files.write(path, image);
+    }
+
+    private final byte[] image;
+    private final long version;
+    private final int timings_offset, strap_count;
+    private final String[] part_numbers;
+}
\ No newline at end of file
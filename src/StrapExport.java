@@ -0,0 +1,647 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * bulk export of the straps of many ROMs and import of them onto other ROMs
+ * one row per strap: rom, index, part_number, clk_range (in 10kHz), latency (hex)
+ * written as CSV with a header line or as newline delimited JSON, one row at a
+ * time, so the output of any number of ROMs never has to fit in memory
+ * an import matches rows to straps by (index, clk_range) through the strap index
+ *
+ * usage: StrapExport export [-j] [-o FILE] <rom|directory|glob>...
+ *        StrapExport import [-r ROM] [-a] (-o DIR | -i) FILE <rom|directory|glob>...
+ */
+public class StrapExport implements Closeable
+{
+    public enum Format { CSV, JSON }
+
+    public static final String[] COLUMNS = { "rom", "index", "part_number", "clk_range", "latency" };
+
+    private static final String USAGE =
+        "usage: StrapExport export [-j] [-o FILE] <rom|directory|glob>...\n" +
+        "       StrapExport import [-r ROM] [-a] (-o DIR | -i) FILE <rom|directory|glob>...\n" +
+        "  -j, --json         export newline delimited JSON instead of CSV\n" +
+        "  -o, --out          the file to export to (default: stdout) or the directory to write imported ROMs to\n" +
+        "  -i, --in-place     overwrite the ROMs an import is applied to\n" +
+        "  -r, --from ROM     only import the rows exported from ROM\n" +
+        "  -a, --any-part     import straps even if the part number of the RAM IC differs";
+
+    public static void main(String[] args)
+    {
+        if(args.length < 1 || !(args[0].equals("export") || args[0].equals("import")))
+        {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        boolean json = false, in_place = false, any_part = false;
+        String out = null, from = null;
+        ArrayList<String> inputs = new ArrayList<>();
+        try
+        {
+            for(int i = 1; i < args.length; i++)
+            {
+                switch(args[i])
+                {
+                case "-j": case "--json":
+                    json = true;
+                    break;
+                case "-o": case "--out":
+                    out = next_arg(args, ++i);
+                    break;
+                case "-i": case "--in-place":
+                    in_place = true;
+                    break;
+                case "-r": case "--from":
+                    from = next_arg(args, ++i);
+                    break;
+                case "-a": case "--any-part":
+                    any_part = true;
+                    break;
+                default:
+                    if(args[i].startsWith("-"))
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                    inputs.add(args[i]);
+                }
+            }
+
+            if(args[0].equals("import") && (inputs.size() < 2 || in_place == (out != null)))
+                throw new IllegalArgumentException("expected a strap file, at least one ROM and exactly one of --out or --in-place");
+            if(args[0].equals("export") && inputs.isEmpty())
+                throw new IllegalArgumentException("expected at least one ROM");
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        int failed;
+        try
+        {
+            if(args[0].equals("export"))
+                failed = export(TimingsEditorCLI.expand_inputs(inputs), out == null ? null : Paths.get(out), json ? Format.JSON : Format.CSV);
+            else
+            {
+                Straps straps;
+                try(BufferedReader in = Files.newBufferedReader(Paths.get(inputs.get(0)), StandardCharsets.UTF_8))
+                {
+                    straps = read(in, from);
+                }
+                Path out_dir = out == null ? null : Paths.get(out);
+                if(out_dir != null) Files.createDirectories(out_dir);
+
+                failed = apply(TimingsEditorCLI.expand_inputs(inputs.subList(1, inputs.size())), straps, out_dir, !any_part);
+            }
+        }
+        catch(IOException | IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /*
+     * writes every strap of roms to out, or stdout if out is null
+     * ROMs that fail to load are reported on stderr and skipped
+     * returns the number of ROMs that failed
+     */
+    public static int export(List<Path> roms, Path out, Format format) throws IOException
+    {
+        Writer writer = out == null
+            ? new BufferedWriter(new OutputStreamWriter(unclosable(System.out), StandardCharsets.UTF_8), 64 * 1024)
+            : Files.newBufferedWriter(out, StandardCharsets.UTF_8);
+
+        int failed = 0;
+        try(StrapExport export = new StrapExport(writer, format))
+        {
+            for(Path rom : roms)
+            {
+                try
+                {
+                    export.write_rom(rom.toString(), new TimingsEditor(rom.toString()));
+                }
+                catch(IllegalArgumentException e)
+                {
+                    System.err.println(rom + ": " + e.getMessage());
+                    failed++;
+                }
+            }
+        }
+
+        return failed;
+    }
+
+    /*
+     * applies straps to every ROM, writing it to out_dir or back to the ROM if out_dir is null
+     * prints one line per ROM, returns the number of ROMs that failed
+     * throws before writing anything if two ROMs would be written to the same file
+     */
+    public static int apply(List<Path> roms, Straps straps, Path out_dir, boolean match_part_numbers) throws IllegalArgumentException
+    {
+        TimingsEditorCLI.check_unique_outputs(roms, out_dir != null);
+
+        int failed = 0;
+        for(Path rom : roms)
+        {
+            Path out = out_dir == null ? rom : out_dir.resolve(rom.getFileName());
+            try
+            {
+                TimingsEditor te = new TimingsEditor(rom.toString());
+                int count = straps.apply(te, match_part_numbers);
+                if(!te.save_bios(out.toString()))
+                    throw new IOException("failed to write to " + out);
+
+                System.out.println(String.format("OK   %s -> %s (%d straps)", rom, out, count));
+            }
+            catch(IOException | IllegalArgumentException e)
+            {
+                System.out.println("FAIL " + rom + ": " + e.getMessage());
+                failed++;
+            }
+        }
+
+        return failed;
+    }
+
+    /*
+     * out is closed with the export
+     * CSV starts with a header line
+     */
+    public StrapExport(Writer out, Format format) throws IOException
+    {
+        this.out = out;
+        this.format = format;
+        if(format == Format.CSV)
+        {
+            out.write(String.join(",", COLUMNS));
+            out.write('\n');
+        }
+    }
+
+    /*
+     * writes one row per strap of te, rom is the name written to the rom column
+     * returns the number of rows
+     */
+    public int write_rom(String rom, TimingsEditor te) throws IOException, IllegalArgumentException
+    {
+        StrapTable table = te.get_strap_table();
+        if(table == null)
+            throw new IllegalArgumentException("failed to find the straps");
+
+        for(int row = 0; row < table.size(); row++)
+        {
+            int index = Byte.toUnsignedInt(table.get_index(row));
+            String part_number = te.get_part_number(index);
+            table.get_latency(row, latency_buffer);
+            Hex.encode(latency_buffer, 0, StrapTable.LATENCY_SIZE, hex_buffer, 0);
+
+            if(format == Format.CSV)
+            {
+                write_csv_field(rom);
+                out.write(',');
+                out.write(Integer.toString(index));
+                out.write(',');
+                write_csv_field(part_number == null ? "" : part_number);
+                out.write(',');
+                out.write(Integer.toString(table.get_clk_range(row)));
+                out.write(',');
+                out.write(hex_buffer);
+            }
+            else
+            {
+                out.write("{\"rom\":");
+                write_json_string(rom);
+                out.write(",\"index\":");
+                out.write(Integer.toString(index));
+                out.write(",\"part_number\":");
+                write_json_string(part_number == null ? "" : part_number);
+                out.write(",\"clk_range\":");
+                out.write(Integer.toString(table.get_clk_range(row)));
+                out.write(",\"latency\":\"");
+                out.write(hex_buffer);
+                out.write("\"}");
+            }
+            out.write('\n');
+        }
+
+        return table.size();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        out.close();
+    }
+
+    /*
+     * the straps read from an export, at most one per (index, clk_range)
+     */
+    public static class Straps
+    {
+        Straps(StrapTable table, HashMap<Byte, String> part_numbers)
+        {
+            this.table = table;
+            this.part_numbers = part_numbers;
+        }
+
+        /*
+         * overwrites every strap of te that has a row with a different ucLatency
+         * with match_part_numbers set, an IC whose part number differs from the
+         * exported one is left alone, unless either of them is unknown
+         * returns the number of straps that were overwritten
+         */
+        public int apply(TimingsEditor te, boolean match_part_numbers) throws IllegalArgumentException
+        {
+            StrapTable current = te.get_strap_table();
+            if(current == null)
+                throw new IllegalArgumentException("failed to find the straps");
+
+            byte[] latency = new byte[StrapTable.LATENCY_SIZE];
+            int count = 0;
+            for(int row = 0; row < table.size(); row++)
+            {
+                byte index = table.get_index(row);
+                int clk_range = table.get_clk_range(row);
+                int target = current.find(index, clk_range);
+                if(target == -1 || table.latency_equals(row, current, target)) continue;
+
+                if(match_part_numbers)
+                {
+                    String exported = part_numbers.get(index), actual = te.get_part_number(Byte.toUnsignedInt(index));
+                    if(exported != null && !exported.isEmpty() && actual != null && !exported.equals(actual))
+                        continue;
+                }
+
+                table.get_latency(row, latency);
+                if(te.set_timings(index, clk_range, latency)) count++;
+            }
+
+            return count;
+        }
+
+        public int size()
+        {
+            return table.size();
+        }
+
+        public final StrapTable table;
+        private final HashMap<Byte, String> part_numbers;
+    }
+
+    /*
+     * reads a CSV or JSON export, telling them apart by the first line
+     * with from set only the rows whose rom column equals it are kept
+     * throws if a row is malformed or two rows disagree about the same strap
+     */
+    public static Straps read(BufferedReader in, String from) throws IOException, IllegalArgumentException
+    {
+        int[] clk_ranges = new int[256];
+        byte[] indices = new byte[256];
+        byte[] latencies = new byte[256 * StrapTable.LATENCY_SIZE];
+        HashMap<Byte, String> part_numbers = new HashMap<>();
+        int count = 0;
+
+        int[] csv_columns = null;
+        int line_number = 0;
+        for(String line; (line = in.readLine()) != null; )
+        {
+            line_number++;
+            if(line.isEmpty()) continue;
+
+            String[] row;
+            if(line.charAt(0) == '{')
+                row = parse_json_row(line);
+            else if(csv_columns == null)
+            {
+                // the header says which column is which
+                csv_columns = csv_columns(split_csv(line));
+                continue;
+            }
+            else
+            {
+                List<String> fields = split_csv(line);
+                row = new String[COLUMNS.length];
+                for(int i = 0; i < row.length; i++)
+                    row[i] = csv_columns[i] < fields.size() ? fields.get(csv_columns[i]) : null;
+            }
+
+            if(from != null && !from.equals(row[0])) continue;
+
+            if(count == indices.length)
+            {
+                clk_ranges = Arrays.copyOf(clk_ranges, count * 2);
+                indices = Arrays.copyOf(indices, count * 2);
+                latencies = Arrays.copyOf(latencies, count * 2 * StrapTable.LATENCY_SIZE);
+            }
+
+            try
+            {
+                int index = Integer.parseInt(row[1]);
+                int clk_range = Integer.parseInt(row[3]);
+                if(index < 0 || index > 255 || clk_range < 0 || clk_range > StrapTable.MAX_CLK_RANGE)
+                    throw new NumberFormatException();
+                if(row[4] == null || row[4].length() != 2 * StrapTable.LATENCY_SIZE
+                    || !Hex.decode(row[4], 0, row[4].length(), latencies, count * StrapTable.LATENCY_SIZE))
+                    throw new NumberFormatException();
+
+                indices[count] = (byte)index;
+                clk_ranges[count] = clk_range;
+            }
+            catch(NumberFormatException e)
+            {
+                throw new IllegalArgumentException("line " + line_number + ": invalid strap row");
+            }
+
+            String part_number = row[2] == null ? "" : row[2];
+            String previous = part_numbers.putIfAbsent(indices[count], part_number);
+            if(previous != null && !previous.equals(part_number))
+                throw new IllegalArgumentException(String.format("line %d: index %d has part numbers %s and %s, select one ROM with --from",
+                    line_number, Byte.toUnsignedInt(indices[count]), previous, part_number));
+
+            count++;
+        }
+
+        StrapTable table = new StrapTable(Arrays.copyOf(clk_ranges, count), Arrays.copyOf(indices, count),
+            Arrays.copyOf(latencies, count * StrapTable.LATENCY_SIZE));
+        return new Straps(unique_rows(table), part_numbers);
+    }
+
+    /*
+     * drops repeated rows, the table is sorted so they are next to each other
+     * throws if the repeats have different ucLatency
+     */
+    private static StrapTable unique_rows(StrapTable table) throws IllegalArgumentException
+    {
+        int n = table.size();
+        int[] clk_ranges = new int[n];
+        byte[] indices = new byte[n];
+        byte[] latencies = new byte[n * StrapTable.LATENCY_SIZE];
+        byte[] latency = new byte[StrapTable.LATENCY_SIZE];
+
+        int unique = 0;
+        for(int row = 0; row < n; row++)
+        {
+            if(row > 0 && table.get_index(row) == table.get_index(row - 1) && table.get_clk_range(row) == table.get_clk_range(row - 1))
+            {
+                if(!table.latency_equals(row, table, row - 1))
+                    throw new IllegalArgumentException(String.format("conflicting straps for index %d %dkHz, select one ROM with --from",
+                        Byte.toUnsignedInt(table.get_index(row)), table.get_clk_range(row) * 10));
+                continue;
+            }
+
+            clk_ranges[unique] = table.get_clk_range(row);
+            indices[unique] = table.get_index(row);
+            table.get_latency(row, latency);
+            System.arraycopy(latency, 0, latencies, unique * StrapTable.LATENCY_SIZE, StrapTable.LATENCY_SIZE);
+            unique++;
+        }
+
+        if(unique == n) return table;
+
+        return new StrapTable(Arrays.copyOf(clk_ranges, unique), Arrays.copyOf(indices, unique),
+            Arrays.copyOf(latencies, unique * StrapTable.LATENCY_SIZE));
+    }
+
+    /*
+     * returns where each of COLUMNS is in header
+     */
+    private static int[] csv_columns(List<String> header) throws IllegalArgumentException
+    {
+        int[] columns = new int[COLUMNS.length];
+        for(int i = 0; i < COLUMNS.length; i++)
+        {
+            columns[i] = header.indexOf(COLUMNS[i]);
+            if(columns[i] == -1 && i != 0 && i != 2)
+                throw new IllegalArgumentException("the CSV header has no " + COLUMNS[i] + " column");
+        }
+
+        return columns;
+    }
+
+    /*
+     * splits one CSV record, fields can be quoted with "" for a literal quote
+     */
+    private static List<String> split_csv(String line)
+    {
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for(int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if(quoted)
+            {
+                if(c != '"') field.append(c);
+                else if(i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    field.append('"');
+                    i++;
+                }
+                else quoted = false;
+            }
+            else if(c == '"') quoted = true;
+            else if(c == ',')
+            {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else field.append(c);
+        }
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    /*
+     * reads the COLUMNS of a flat JSON object whose values are strings or numbers
+     * other keys are ignored, missing ones are null
+     */
+    private static String[] parse_json_row(String line) throws IllegalArgumentException
+    {
+        String[] row = new String[COLUMNS.length];
+        int[] pos = { 1 };
+        while(true)
+        {
+            skip_spaces(line, pos);
+            if(pos[0] < line.length() && line.charAt(pos[0]) == '}') break;
+
+            String key = parse_json_string(line, pos);
+            skip_spaces(line, pos);
+            expect(line, pos, ':');
+            skip_spaces(line, pos);
+
+            String value;
+            if(pos[0] < line.length() && line.charAt(pos[0]) == '"')
+                value = parse_json_string(line, pos);
+            else
+            {
+                int start = pos[0];
+                while(pos[0] < line.length() && ",} \t".indexOf(line.charAt(pos[0])) == -1)
+                    pos[0]++;
+                value = line.substring(start, pos[0]);
+            }
+
+            int column = Arrays.asList(COLUMNS).indexOf(key);
+            if(column != -1) row[column] = value;
+
+            skip_spaces(line, pos);
+            if(pos[0] < line.length() && line.charAt(pos[0]) == ',') pos[0]++;
+            else
+            {
+                expect(line, pos, '}');
+                break;
+            }
+        }
+
+        return row;
+    }
+
+    private static String parse_json_string(String s, int[] pos) throws IllegalArgumentException
+    {
+        expect(s, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while(pos[0] < s.length())
+        {
+            char c = s.charAt(pos[0]++);
+            if(c == '"') return sb.toString();
+            if(c != '\\')
+            {
+                sb.append(c);
+                continue;
+            }
+            if(pos[0] >= s.length()) break;
+
+            char e = s.charAt(pos[0]++);
+            switch(e)
+            {
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'u':
+                if(pos[0] + 4 > s.length()) throw new IllegalArgumentException("invalid JSON escape");
+                try
+                {
+                    sb.append((char)Integer.parseInt(s.substring(pos[0], pos[0] + 4), 16));
+                }
+                catch(NumberFormatException ex)
+                {
+                    throw new IllegalArgumentException("invalid JSON escape");
+                }
+                pos[0] += 4;
+                break;
+            default: sb.append(e);
+            }
+        }
+
+        throw new IllegalArgumentException("unterminated JSON string");
+    }
+
+    private static void skip_spaces(String s, int[] pos)
+    {
+        while(pos[0] < s.length() && Character.isWhitespace(s.charAt(pos[0])))
+            pos[0]++;
+    }
+
+    private static void expect(String s, int[] pos, char c) throws IllegalArgumentException
+    {
+        if(pos[0] >= s.length() || s.charAt(pos[0]) != c)
+            throw new IllegalArgumentException("invalid JSON row, expected '" + c + "' at " + pos[0]);
+        pos[0]++;
+    }
+
+    private void write_csv_field(String s) throws IOException
+    {
+        boolean quote = false;
+        for(int i = 0; i < s.length() && !quote; i++)
+        {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if(!quote)
+        {
+            out.write(s);
+            return;
+        }
+
+        out.write('"');
+        out.write(s.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private void write_json_string(String s) throws IOException
+    {
+        append_json_string(out, s);
+    }
+
+    /*
+     * appends s to out as a quoted JSON string
+     */
+    static void append_json_string(Appendable out, String s) throws IOException
+    {
+        out.append('"');
+        for(int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\') out.append('\\').append(c);
+            else if(c < 0x20) out.append(String.format("\\u%04x", (int)c));
+            else out.append(c);
+        }
+        out.append('"');
+    }
+
+    /*
+     * out, except that closing only flushes it, for exporting to stdout
+     * without losing everything printed after the export
+     */
+    private static OutputStream unclosable(OutputStream out)
+    {
+        return new FilterOutputStream(out)
+        {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                flush();
+            }
+        };
+    }
+
+    private static String next_arg(String[] args, int i)
+    {
+        if(i >= args.length)
+            throw new IllegalArgumentException("missing value for " + args[i - 1]);
+
+        return args[i];
+    }
+
+    private final Writer out;
+    private final Format format;
+    private final byte[] latency_buffer = new byte[StrapTable.LATENCY_SIZE];
+    private final char[] hex_buffer = new char[2 * StrapTable.LATENCY_SIZE];
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+import java.nio.ByteBuffer;
+
+/*
+ * the MC sequencer and arbiter registers packed in the ucLatency of a
+ * GDDR5 (Polaris) strap, 12 little endian dwords, and their bit fields
+ * each field is decoded from the bytes it lives in when it is read and
+ * written back with a mask, the rest of the dword is left alone
+ * other BIOSes pack their straps differently, TimingsEditor.has_strap_fields()
+ * tells whether this layout applies
+ */
+public enum StrapField
+{
+    // whole registers, in strap order
+    SEQ_WR_CTL_D1(0, 0, 32),
+    SEQ_WR_CTL_2(1, 0, 32),
+    SEQ_PMG_TIMING(2, 0, 32),
+    SEQ_RAS_TIMING(3, 0, 32),
+    SEQ_CAS_TIMING(4, 0, 32),
+    SEQ_MISC_TIMING(5, 0, 32),
+    SEQ_MISC_TIMING2(6, 0, 32),
+    SEQ_MISC1(7, 0, 32),
+    SEQ_MISC3(8, 0, 32),
+    SEQ_MISC8(9, 0, 32),
+    ARB_DRAM_TIMING(10, 0, 32),
+    ARB_DRAM_TIMING2(11, 0, 32),
+
+    // SEQ_PMG_TIMING
+    PMG_TCKSRE(2, 0, 3),
+    PMG_TCKSRX(2, 4, 3),
+    PMG_TCKE_PULSE(2, 8, 4),
+    PMG_TCKE(2, 12, 6),
+    PMG_SEQ_IDLE(2, 18, 3),
+    PMG_TCKE_PULSE_MSB(2, 23, 1),
+    PMG_SEQ_IDLE_SS(2, 24, 8),
+
+    // SEQ_RAS_TIMING
+    RAS_TRCDW(3, 0, 5),
+    RAS_TRCDWA(3, 5, 5),
+    RAS_TRCDR(3, 10, 5),
+    RAS_TRCDRA(3, 15, 5),
+    RAS_TRRD(3, 20, 4),
+    RAS_TRC(3, 24, 7),
+
+    // SEQ_CAS_TIMING
+    CAS_TNOPW(4, 0, 2),
+    CAS_TNOPR(4, 2, 2),
+    CAS_TR2W(4, 4, 5),
+    CAS_TCCDL(4, 9, 3),
+    CAS_TR2R(4, 12, 4),
+    CAS_TW2R(4, 16, 5),
+    CAS_TCL(4, 24, 5),
+
+    // SEQ_MISC_TIMING
+    MISC_TRP_WRA(5, 0, 6),
+    MISC_TRP_RDA(5, 8, 6),
+    MISC_TRP(5, 15, 6),
+    MISC_TRFC(5, 21, 9),
+
+    // SEQ_MISC_TIMING2
+    MISC2_PA2RDATA(6, 0, 3),
+    MISC2_PA2WDATA(6, 4, 3),
+    MISC2_TFAW(6, 8, 5),
+    MISC2_TCRCRL(6, 13, 3),
+    MISC2_TCRCWL(6, 16, 5),
+    MISC2_T32AW(6, 21, 4),
+    MISC2_TWDATATR(6, 28, 4),
+
+    // ARB_DRAM_TIMING
+    ARB_ACTRD(10, 0, 8),
+    ARB_ACTWR(10, 8, 8),
+    ARB_RASMACTRD(10, 16, 8),
+    ARB_RASMACTWR(10, 24, 8),
+
+    // ARB_DRAM_TIMING2
+    ARB2_RAS2RAS(11, 0, 8),
+    ARB2_RP(11, 8, 8),
+    ARB2_WRPLUSRP(11, 16, 8),
+    ARB2_BUS_TURN(11, 24, 8);
+
+    StrapField(int word, int shift, int width)
+    {
+        this.offset = word * 4;
+        this.shift = shift;
+        this.width = width;
+    }
+
+    /*
+     * offset of the dword holding the field, from the start of ucLatency
+     */
+    public int offset()
+    {
+        return offset;
+    }
+
+    public int width()
+    {
+        return width;
+    }
+
+    /*
+     * the largest value the field can hold, -1 for whole registers
+     */
+    public int max()
+    {
+        return -1 >>> (32 - width);
+    }
+
+    public int get(byte[] latency)
+    {
+        return get(latency, 0);
+    }
+
+    /*
+     * reads the field of the ucLatency at latency_offset in bytes
+     */
+    public int get(byte[] bytes, int latency_offset)
+    {
+        int i = latency_offset + offset;
+        int dword = (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16 | bytes[i + 3] << 24;
+
+        return extract(dword);
+    }
+
+    /*
+     * bytes has to be little endian
+     */
+    public int get(ByteBuffer bytes, int latency_offset)
+    {
+        return extract(bytes.getInt(latency_offset + offset));
+    }
+
+    public void set(byte[] latency, int value)
+    {
+        set(latency, 0, value);
+    }
+
+    /*
+     * writes value to the field of the ucLatency at latency_offset in bytes
+     */
+    public void set(byte[] bytes, int latency_offset, int value)
+    {
+        int i = latency_offset + offset;
+        int dword = (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16 | bytes[i + 3] << 24;
+        dword = insert(dword, value);
+
+        bytes[i] = (byte)dword;
+        bytes[i + 1] = (byte)(dword >> 8);
+        bytes[i + 2] = (byte)(dword >> 16);
+        bytes[i + 3] = (byte)(dword >> 24);
+    }
+
+    /*
+     * returns dword, the register holding the field, with the field replaced by value
+     */
+    public int insert(int dword, int value) throws IllegalArgumentException
+    {
+        int max = max();
+        if(width < 32 && (value < 0 || value > max))
+            throw new IllegalArgumentException(String.format("%s is %d bits, %d doesn't fit", name(), width, value));
+
+        return (dword & ~(max << shift)) | value << shift;
+    }
+
+    public int extract(int dword)
+    {
+        return (dword >>> shift) & max();
+    }
+
+    /*
+     * returns a ucLatency sized mask with the bits of every one of fields set
+     */
+    public static byte[] mask(StrapField... fields)
+    {
+        byte[] mask = new byte[StrapTable.LATENCY_SIZE];
+        for(StrapField f : fields)
+        {
+            int bits = f.insert(0, f.max());
+            for(int i = 0; i < 4; i++)
+                mask[f.offset + i] |= (byte)(bits >> 8 * i);
+        }
+
+        return mask;
+    }
+
+    private final int offset, shift, width;
+}
\ No newline at end of file
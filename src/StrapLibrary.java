@@ -0,0 +1,480 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * content addressed store of ucLatency straps, shared by every ROM added to it
+ * a library is a directory of four files:
+ *   straps.dat  the unique straps, LATENCY_SIZE bytes each, strap id = record number
+ *   refs.dat    REF_SIZE byte records of where a strap was seen, each one links
+ *               to the previous ref of the same strap
+ *   strings.dat ROM names and part numbers the refs point to
+ *   index.dat   memory mapped open addressing hash table from the FNV-1a hash of
+ *               a strap to its id and newest ref
+ * all files are append only except index.dat, which can be rebuilt from the others
+ */
+public class StrapLibrary implements Closeable
+{
+    public static final int LATENCY_SIZE = StrapTable.LATENCY_SIZE;
+
+    /*
+     * one place a strap was seen
+     */
+    public static class Ref
+    {
+        Ref(int strap_id, int clk_range, byte index, String rom, String part_number)
+        {
+            this.strap_id = strap_id;
+            this.clk_range = clk_range;
+            this.index = index;
+            this.rom = rom;
+            this.part_number = part_number;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: index %d %s %dMHz", rom, Byte.toUnsignedInt(index), part_number, clk_range / 100);
+        }
+
+        public final int strap_id;
+        public final int clk_range;     // in 10kHz
+        public final byte index;
+        public final String rom;
+        public final String part_number;
+    }
+
+    public static void main(String[] args)
+    {
+        if(args.length < 3 || !(args[1].equals("add") || args[1].equals("refs")))
+        {
+            System.err.println(
+                "usage: StrapLibrary LIBRARY add ROM...\n" +
+                "       StrapLibrary LIBRARY refs LATENCY_HEX [MHZ]"
+            );
+            System.exit(2);
+        }
+
+        try(StrapLibrary library = new StrapLibrary(Paths.get(args[0])))
+        {
+            if(args[1].equals("add"))
+            {
+                for(int i = 2; i < args.length; i++)
+                {
+                    try
+                    {
+                        int added = library.add_rom(args[i], new TimingsEditor(args[i]));
+                        System.out.println(String.format("%s: %d new straps", args[i], added));
+                    }
+                    catch(IllegalArgumentException e)
+                    {
+                        System.err.println(args[i] + ": " + e.getMessage());
+                    }
+                }
+                System.out.println(String.format("%d unique straps", library.size()));
+            }
+            else
+            {
+                int clk_range = args.length > 3 ? Integer.parseInt(args[3]) * 100 : -1;
+                for(Ref ref : library.find_refs(parse_hex(args[2])))
+                {
+                    if(clk_range == -1 || ref.clk_range == clk_range)
+                        System.out.println(ref);
+                }
+            }
+        }
+        catch(IOException | IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /*
+     * opens the library in dir, creating it if it doesn't exist
+     */
+    public StrapLibrary(Path dir) throws IOException
+    {
+        Files.createDirectories(dir);
+        straps = open(dir.resolve("straps.dat"));
+        refs = open(dir.resolve("refs.dat"));
+        strings = open(dir.resolve("strings.dat"));
+        index = open(dir.resolve("index.dat"));
+
+        strap_count = (int)(straps.size() / LATENCY_SIZE);
+        ref_count = (int)(refs.size() / REF_SIZE);
+        strings_size = strings.size();
+        load_strings();
+
+        // the index is stale if straps.dat or refs.dat was appended to without it, e.g. after a crash
+        map_index(Math.max(INITIAL_CAPACITY, (int)((index.size() - INDEX_HEADER_SIZE) / SLOT_SIZE)));
+        if(slots.getInt(0) != INDEX_MAGIC || slots.getInt(8) != strap_count || slots.getInt(12) != ref_count)
+            rebuild_index();
+    }
+
+    public synchronized int size()
+    {
+        return strap_count;
+    }
+
+    /*
+     * adds every strap of te, recording rom and the part number of its RAM IC
+     * returns the number of straps the library didn't have yet
+     */
+    public synchronized int add_rom(String rom, TimingsEditor te) throws IOException
+    {
+        StrapTable table = te.get_strap_table();
+        if(table == null)
+            throw new IllegalArgumentException(rom + ": failed to find the straps");
+
+        int before = strap_count;
+        byte[] latency = new byte[LATENCY_SIZE];
+        for(int row = 0; row < table.size(); row++)
+        {
+            table.get_latency(row, latency);
+            String part_number = te.get_part_number(Byte.toUnsignedInt(table.get_index(row)));
+            add(latency, table.get_clk_range(row), table.get_index(row), rom, part_number == null ? "" : part_number);
+        }
+
+        return strap_count - before;
+    }
+
+    /*
+     * stores latency if it isn't stored yet and records where it was seen
+     * returns its strap id
+     */
+    public synchronized int add(byte[] latency, int clk_range, byte ucIndex, String rom, String part_number) throws IOException
+    {
+        long hash = hash(latency);
+        int slot = lookup(hash, latency);
+        int strap_id;
+        if(slot_strap(slot) == -1)
+        {
+            strap_id = strap_count;
+            write_fully(straps, ByteBuffer.wrap(latency, 0, LATENCY_SIZE), (long)strap_id * LATENCY_SIZE);
+            strap_count++;
+
+            set_slot(slot, hash, strap_id, -1);
+            slots.putInt(8, strap_count);
+            if(strap_count * 2 > capacity) grow();
+            slot = lookup(hash, latency);
+        }
+        else strap_id = slot_strap(slot);
+
+        ByteBuffer ref = ByteBuffer.allocate(REF_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ref.putInt(0, slot_head(slot));
+        ref.putInt(4, strap_id);
+        ref.putInt(8, clk_range);
+        ref.put(12, ucIndex);
+        ref.putLong(16, intern(rom));
+        ref.putLong(24, intern(part_number));
+        write_fully(refs, ref, (long)ref_count * REF_SIZE);
+
+        slots.putInt(slot_offset(slot) + 12, ref_count++);
+        slots.putInt(12, ref_count);
+
+        return strap_id;
+    }
+
+    /*
+     * returns the id of latency, or -1 if it isn't in the library
+     */
+    public synchronized int find(byte[] latency) throws IOException
+    {
+        return slot_strap(lookup(hash(latency), latency));
+    }
+
+    public synchronized byte[] get_latency(int strap_id) throws IOException
+    {
+        if(strap_id < 0 || strap_id >= strap_count)
+            throw new IllegalArgumentException("no strap " + strap_id);
+
+        ByteBuffer latency = ByteBuffer.allocate(LATENCY_SIZE);
+        read_fully(straps, latency, (long)strap_id * LATENCY_SIZE);
+
+        return latency.array();
+    }
+
+    /*
+     * returns everywhere strap_id was seen, newest first
+     */
+    public synchronized List<Ref> get_refs(int strap_id) throws IOException
+    {
+        byte[] latency = get_latency(strap_id);
+        int slot = lookup(hash(latency), latency);
+
+        ArrayList<Ref> result = new ArrayList<>();
+
+        ByteBuffer ref = ByteBuffer.allocate(REF_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for(int r = slot_head(slot); r != -1; r = ref.getInt(0))
+        {
+            ref.clear();
+            read_fully(refs, ref, (long)r * REF_SIZE);
+            result.add(new Ref(strap_id, ref.getInt(8), ref.get(12), read_string(ref.getLong(16)), read_string(ref.getLong(24))));
+        }
+
+        return result;
+    }
+
+    /*
+     * returns everywhere latency was seen, empty if it isn't in the library
+     */
+    public synchronized List<Ref> find_refs(byte[] latency) throws IOException
+    {
+        int strap_id = find(latency);
+        if(strap_id == -1) return new ArrayList<>();
+
+        return get_refs(strap_id);
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        slots.force();
+        straps.close();
+        refs.close();
+        strings.close();
+        index.close();
+    }
+
+    /*
+     * FNV-1a, 64 bit
+     */
+    static long hash(byte[] latency)
+    {
+        long h = 0xCBF29CE484222325L;
+        for(int i = 0; i < LATENCY_SIZE; i++)
+        {
+            h ^= latency[i] & 0xFF;
+            h *= 0x100000001B3L;
+        }
+
+        return h;
+    }
+
+    /*
+     * returns the slot holding latency, or the empty slot it would go in
+     * the hash only picks the slot, the stored strap is compared to be sure
+     */
+    private int lookup(long hash, byte[] latency) throws IOException
+    {
+        if(latency.length != LATENCY_SIZE)
+            throw new IllegalArgumentException(String.format("a strap is %d bytes, not %d", LATENCY_SIZE, latency.length));
+
+        byte[] stored = new byte[LATENCY_SIZE];
+        for(int slot = (int)(hash & (capacity - 1)); ; slot = (slot + 1) & (capacity - 1))
+        {
+            int strap_id = slot_strap(slot);
+            if(strap_id == -1) return slot;
+            if(slots.getLong(slot_offset(slot)) != hash) continue;
+
+            read_fully(straps, ByteBuffer.wrap(stored), (long)strap_id * LATENCY_SIZE);
+            if(Arrays.equals(stored, latency)) return slot;
+        }
+    }
+
+    private int slot_offset(int slot)
+    {
+        return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    // ids are stored + 1 so a zeroed slot is empty
+    private int slot_strap(int slot)
+    {
+        return slots.getInt(slot_offset(slot) + 8) - 1;
+    }
+
+    private int slot_head(int slot)
+    {
+        return slots.getInt(slot_offset(slot) + 12);
+    }
+
+    private void set_slot(int slot, long hash, int strap_id, int head)
+    {
+        int offset = slot_offset(slot);
+        slots.putLong(offset, hash);
+        slots.putInt(offset + 8, strap_id + 1);
+        slots.putInt(offset + 12, head);
+    }
+
+    /*
+     * maps index.dat with room for capacity slots, capacity is a power of 2
+     */
+    private void map_index(int capacity) throws IOException
+    {
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        slots = index.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long)this.capacity * SLOT_SIZE);
+        slots.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /*
+     * doubles the table, rehashing every slot
+     */
+    private void grow() throws IOException
+    {
+        long[] hashes = new long[strap_count];
+        int[] ids = new int[strap_count], heads = new int[strap_count];
+        int n = 0;
+        for(int slot = 0; slot < capacity; slot++)
+        {
+            if(slot_strap(slot) == -1) continue;
+            hashes[n] = slots.getLong(slot_offset(slot));
+            ids[n] = slot_strap(slot);
+            heads[n++] = slot_head(slot);
+        }
+
+        map_index(capacity * 2);
+        clear_index();
+        for(int i = 0; i < n; i++)
+            set_slot(free_slot(hashes[i]), hashes[i], ids[i], heads[i]);
+    }
+
+    /*
+     * rebuilds index.dat from straps.dat and refs.dat, when it is missing or out of date
+     */
+    private void rebuild_index() throws IOException
+    {
+        map_index(Math.max(capacity, strap_count * 2 + 1));
+        clear_index();
+
+        byte[] latency = new byte[LATENCY_SIZE];
+        int[] slot_of = new int[strap_count];
+        for(int strap_id = 0; strap_id < strap_count; strap_id++)
+        {
+            read_fully(straps, ByteBuffer.wrap(latency), (long)strap_id * LATENCY_SIZE);
+            long hash = hash(latency);
+            slot_of[strap_id] = free_slot(hash);
+            set_slot(slot_of[strap_id], hash, strap_id, -1);
+        }
+
+        // the newest ref of each strap is its head
+        ByteBuffer ref = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        for(int r = 0; r < ref_count; r++)
+        {
+            ref.clear();
+            read_fully(refs, ref, (long)r * REF_SIZE);
+            slots.putInt(slot_offset(slot_of[ref.getInt(4)]) + 12, r);
+        }
+    }
+
+    private void clear_index()
+    {
+        for(int slot = 0; slot < capacity; slot++)
+            set_slot(slot, 0, -1, -1);
+        slots.putInt(0, INDEX_MAGIC).putInt(4, capacity).putInt(8, strap_count).putInt(12, ref_count);
+    }
+
+    private int free_slot(long hash)
+    {
+        int slot = (int)(hash & (capacity - 1));
+        while(slot_strap(slot) != -1)
+            slot = (slot + 1) & (capacity - 1);
+
+        return slot;
+    }
+
+    /*
+     * returns the offset of s in strings.dat, appending it if it isn't there yet
+     */
+    private long intern(String s) throws IOException
+    {
+        Long known = string_offsets.get(s);
+        if(known != null) return known;
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > 0xFFFF)
+            throw new IllegalArgumentException("string too long: " + s);
+
+        ByteBuffer record = ByteBuffer.allocate(2 + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.putShort((short)bytes.length).put(bytes).flip();
+        write_fully(strings, record, strings_size);
+
+        long offset = strings_size;
+        string_offsets.put(s, offset);
+        strings_size += record.capacity();
+
+        return offset;
+    }
+
+    private String read_string(long offset) throws IOException
+    {
+        ByteBuffer length = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+        read_fully(strings, length, offset);
+        ByteBuffer bytes = ByteBuffer.allocate(Short.toUnsignedInt(length.getShort(0)));
+        read_fully(strings, bytes, offset + 2);
+
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    private void load_strings() throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.allocate((int)strings_size).order(ByteOrder.LITTLE_ENDIAN);
+        read_fully(strings, bytes, 0);
+        for(int offset = 0; offset < strings_size; )
+        {
+            // the refs point into this file, a record cut short can't be skipped
+            int length = offset + 2 <= strings_size ? Short.toUnsignedInt(bytes.getShort(offset)) : -1;
+            if(length < 0 || offset + 2 + length > strings_size)
+                throw new IllegalArgumentException("corrupt library: strings.dat is cut short at " + offset);
+
+            string_offsets.put(new String(bytes.array(), offset + 2, length, StandardCharsets.UTF_8), (long)offset);
+            offset += 2 + length;
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException
+    {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void write_fully(FileChannel channel, ByteBuffer src, long position) throws IOException
+    {
+        while(src.hasRemaining())
+            position += channel.write(src, position);
+    }
+
+    private static void read_fully(FileChannel channel, ByteBuffer dst, long position) throws IOException
+    {
+        while(dst.hasRemaining())
+        {
+            int n = channel.read(dst, position);
+            if(n < 0) throw new IOException("library file is truncated");
+            position += n;
+        }
+    }
+
+    private static byte[] parse_hex(String s)
+    {
+        if(s.length() != 2 * LATENCY_SIZE)
+            throw new IllegalArgumentException(String.format("expected %d hex digits", 2 * LATENCY_SIZE));
+
+        byte[] bytes = new byte[LATENCY_SIZE];
+        if(!Hex.decode(s, 0, s.length(), bytes, 0))
+            throw new IllegalArgumentException("invalid hex digits in " + s);
+
+        return bytes;
+    }
+
+    // the index header is the magic, capacity, strap_count and ref_count it was built for
+    private static final int REF_SIZE = 32, SLOT_SIZE = 16, INDEX_HEADER_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INDEX_MAGIC = 0x58494C53;     // "SLIX"
+
+    private final FileChannel straps, refs, strings, index;
+    private final HashMap<String, Long> string_offsets = new HashMap<>();
+    private MappedByteBuffer slots;
+    private int capacity, strap_count, ref_count;
+    private long strings_size;
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+/*
+ * copies the strap at one frequency onto every higher strap of a RAM IC index
+ * written as INDEX:FROM_MHZ[:TO_MHZ], INDEX can be * for every index
+ * e.g. 0:1500 copies the 1500MHz strap of index 0 onto all of its straps above 1500MHz
+ */
+public class StrapPatch
+{
+    public static StrapPatch parse(String spec) throws IllegalArgumentException
+    {
+        String[] parts = spec.split(":");
+        if(parts.length < 2 || parts.length > 3)
+            throw new IllegalArgumentException("invalid strap patch \"" + spec + "\", expected INDEX:FROM_MHZ[:TO_MHZ]");
+
+        try
+        {
+            int index = parts[0].equals("*") ? ALL_INDICES : Integer.parseInt(parts[0]);
+            int from = Integer.parseInt(parts[1]);
+            int to = parts.length == 3 ? Integer.parseInt(parts[2]) : MAX_MHZ;
+
+            if(index != ALL_INDICES && (index < 0 || index > 255))
+                throw new IllegalArgumentException("invalid RAM IC index in \"" + spec + "\"");
+            // ulClkRange is 24 bits in 10kHz, anything above MAX_MHZ doesn't fit in it
+            if(from <= 0 || to < from || to > MAX_MHZ)
+                throw new IllegalArgumentException("invalid frequency range in \"" + spec + "\"");
+
+            return new StrapPatch(index, from, to);
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("invalid strap patch \"" + spec + "\", expected INDEX:FROM_MHZ[:TO_MHZ]");
+        }
+    }
+
+    public StrapPatch(int index, int from_mhz, int to_mhz)
+    {
+        this.index = index;
+        this.from_mhz = from_mhz;
+        this.to_mhz = to_mhz;
+    }
+
+    /*
+     * applies the patch to te as one edit
+     * returns the number of straps that changed
+     * throws if a selected index doesn't have a strap at from_mhz
+     */
+    public int apply(TimingsEditor te) throws IllegalArgumentException
+    {
+        if(index != ALL_INDICES && te.get_strap_offset((byte)index, from_mhz * 100) == -1)
+            throw new IllegalArgumentException(String.format("no %dMHz strap for index %d", from_mhz, index));
+
+        byte[] indices = index == ALL_INDICES ? EVERY_INDEX : new byte[] { (byte)index };
+        return te.propagate_strap(indices, from_mhz * 100, to_mhz * 100, null);
+    }
+
+    @Override
+    public String toString()
+    {
+        return (index == ALL_INDICES ? "*" : String.valueOf(index)) + ":" + from_mhz +
+               (to_mhz == MAX_MHZ ? "" : ":" + to_mhz);
+    }
+
+    public static final int ALL_INDICES = -1, MAX_MHZ = StrapTable.MAX_CLK_RANGE / 100;
+    private static final byte[] EVERY_INDEX = new byte[256];
+    static
+    {
+        for(int i = 0; i < EVERY_INDEX.length; i++)
+            EVERY_INDEX[i] = (byte)i;
+    }
+
+    public final int index, from_mhz, to_mhz;
+}
\ No newline at end of file
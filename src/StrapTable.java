@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/*
+ * flat copy of a BIOS's straps, one row per strap
+ * ucLatency of every strap lives in a single contiguous array next to
+ * parallel clock and index columns, rows are sorted by (ucIndex, ulClkRange)
+ */
+public class StrapTable
+{
+    public static final int LATENCY_SIZE = 0x30;
+    // ulClkRange is 3 bytes
+    public static final int MAX_CLK_RANGE = 0xFFFFFF;
+
+    /*
+     * clk_ranges[i], indices[i] and latencies[i * LATENCY_SIZE..] describe strap i
+     * the rows don't need to be sorted, the columns are copied
+     */
+    public StrapTable(int[] clk_ranges, byte[] indices, byte[] latencies)
+    {
+        if(clk_ranges.length != indices.length || latencies.length != indices.length * LATENCY_SIZE)
+            throw new IllegalArgumentException("StrapTable: column lengths don't match");
+
+        count = indices.length;
+
+        // sort by key, keeping the original row in the low bits
+        long[] order = new long[count];
+        for(int i = 0; i < count; i++)
+            order[i] = Integer.toUnsignedLong(key(indices[i], clk_ranges[i])) << 31 | i;
+        Arrays.sort(order);
+
+        this.clk_ranges = new int[count];
+        this.indices = new byte[count];
+        this.latencies = new byte[latencies.length];
+        for(int row = 0; row < count; row++)
+        {
+            int i = (int)(order[row] & 0x7FFFFFFF);
+            this.clk_ranges[row] = clk_ranges[i];
+            this.indices[row] = indices[i];
+            System.arraycopy(latencies, i * LATENCY_SIZE, this.latencies, row * LATENCY_SIZE, LATENCY_SIZE);
+        }
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public int get_clk_range(int row)
+    {
+        return clk_ranges[row];
+    }
+
+    public byte get_index(int row)
+    {
+        return indices[row];
+    }
+
+    /*
+     * copies ucLatency of row into dst
+     */
+    public void get_latency(int row, byte[] dst)
+    {
+        System.arraycopy(latencies, row * LATENCY_SIZE, dst, 0, LATENCY_SIZE);
+    }
+
+    public byte[] get_latency(int row)
+    {
+        return Arrays.copyOfRange(latencies, row * LATENCY_SIZE, (row + 1) * LATENCY_SIZE);
+    }
+
+    public byte get_latency_byte(int row, int i)
+    {
+        return latencies[row * LATENCY_SIZE + i];
+    }
+
+    public int get_field(int row, StrapField field)
+    {
+        return field.get(latencies, row * LATENCY_SIZE);
+    }
+
+    public void set_latency(int row, byte[] src)
+    {
+        System.arraycopy(src, 0, latencies, row * LATENCY_SIZE, LATENCY_SIZE);
+    }
+
+    /*
+     * returns true if ucLatency of row is the same as ucLatency of other_row in other
+     */
+    public boolean latency_equals(int row, StrapTable other, int other_row)
+    {
+        return Arrays.equals(
+            latencies, row * LATENCY_SIZE, (row + 1) * LATENCY_SIZE,
+            other.latencies, other_row * LATENCY_SIZE, (other_row + 1) * LATENCY_SIZE
+        );
+    }
+
+    /*
+     * returns true if ucLatency of row is the same as latency
+     */
+    public boolean latency_equals(int row, byte[] latency)
+    {
+        return Arrays.equals(latencies, row * LATENCY_SIZE, (row + 1) * LATENCY_SIZE, latency, 0, latency.length);
+    }
+
+    /*
+     * returns the row of the strap for index at clk_range (in 10kHz)
+     * returns -1 if there is no such strap
+     */
+    public int find(byte index, int clk_range)
+    {
+        // the key only keeps 24 bits of the clock, a bigger one would find a real strap
+        if(clk_range < 0 || clk_range > MAX_CLK_RANGE) return -1;
+
+        int target = key(index, clk_range);
+        int lo = 0, hi = count - 1;
+        while(lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Integer.compareUnsigned(key(indices[mid], clk_ranges[mid]), target);
+            if(cmp < 0) lo = mid + 1;
+            else if(cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+
+        return -1;
+    }
+
+    /*
+     * returns the first row for index, rows for index are [first_row(index), end_row(index))
+     */
+    public int first_row(byte index)
+    {
+        return lower_bound(key(index, 0));
+    }
+
+    public int end_row(byte index)
+    {
+        if(index == (byte)0xFF) return count;
+
+        return lower_bound(key(index, 0) + (1 << 24));
+    }
+
+    /*
+     * returns the distinct RAM IC indices, in ascending order
+     */
+    public byte[] get_indices()
+    {
+        byte[] unique = new byte[count];
+        int n = 0;
+        for(int row = 0; row < count; row++)
+        {
+            if(n == 0 || unique[n - 1] != indices[row])
+                unique[n++] = indices[row];
+        }
+
+        return Arrays.copyOf(unique, n);
+    }
+
+    private int lower_bound(int target)
+    {
+        int lo = 0, hi = count;
+        while(lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if(Integer.compareUnsigned(key(indices[mid], clk_ranges[mid]), target) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+
+        return lo;
+    }
+
+    /*
+     * ulClkRange is only 3 bytes, so ucIndex fits in the top byte
+     * keys have to be compared as unsigned ints
+     */
+    private static int key(byte index, int clk_range)
+    {
+        return Byte.toUnsignedInt(index) << 24 | (clk_range & 0xFFFFFF);
+    }
+
+    private final int count;
+    private final int[] clk_ranges;
+    private final byte[] indices;
+    private final byte[] latencies;
+}
\ No newline at end of file
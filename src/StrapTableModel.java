@@ -0,0 +1,205 @@
+import java.awt.Toolkit;
+import java.util.ArrayList;
+
+import javax.swing.table.AbstractTableModel;
+
+/*
+ * table view of the straps of one RAM IC index in a StrapTable
+ * one row per clock: the frequency, the strap as hex and then each StrapField bit field,
+ * if the BIOS has them (see TimingsEditor.has_strap_fields())
+ * cells are only decoded when the table asks for them, i.e. when they are visible
+ */
+public class StrapTableModel extends AbstractTableModel
+{
+    public static final int COLUMN_MHZ = 0, COLUMN_HEX = 1, FIRST_FIELD_COLUMN = 2;
+
+    public interface EditListener
+    {
+        /*
+         * called on the EDT with the new ucLatency of a strap after a cell was edited
+         * the model itself isn't changed until set_latency() is called
+         */
+        void strap_edited(byte index, int clk_range, byte[] latency);
+    }
+
+    public StrapTableModel(EditListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /*
+     * shows the rows of index in straps, with the bit field columns if fields is set
+     */
+    public void set_straps(StrapTable straps, byte index, boolean fields)
+    {
+        boolean columns_changed = fields != show_fields;
+        this.straps = straps;
+        this.index = index;
+        this.show_fields = fields;
+        if(columns_changed) fireTableStructureChanged();
+        else fireTableDataChanged();
+    }
+
+    public void set_straps(StrapTable straps, byte index)
+    {
+        set_straps(straps, index, show_fields);
+    }
+
+    public void set_index(byte index)
+    {
+        set_straps(straps, index);
+    }
+
+    public byte get_index()
+    {
+        return index;
+    }
+
+    public StrapTable get_straps()
+    {
+        return straps;
+    }
+
+    /*
+     * the ulClkRange of the strap shown in row
+     */
+    public int get_clk_range(int row)
+    {
+        return straps.get_clk_range(first_row() + row);
+    }
+
+    /*
+     * stores latency as the strap for index at clk_range and repaints its row if it is shown
+     */
+    public void set_latency(byte index, int clk_range, byte[] latency)
+    {
+        if(straps == null) return;
+
+        int row = straps.find(index, clk_range);
+        if(row == -1) return;
+
+        straps.set_latency(row, latency);
+        if(index == this.index)
+            fireTableRowsUpdated(row - first_row(), row - first_row());
+    }
+
+    @Override
+    public int getRowCount()
+    {
+        return straps == null ? 0 : straps.end_row(index) - first_row();
+    }
+
+    @Override
+    public int getColumnCount()
+    {
+        return FIRST_FIELD_COLUMN + (show_fields ? FIELDS.length : 0);
+    }
+
+    @Override
+    public String getColumnName(int column)
+    {
+        switch(column)
+        {
+        case COLUMN_MHZ: return "MHz";
+        case COLUMN_HEX: return "Timings";
+        default: return FIELDS[column - FIRST_FIELD_COLUMN].name();
+        }
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column)
+    {
+        return column == COLUMN_HEX ? String.class : Integer.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column)
+    {
+        return column != COLUMN_MHZ;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column)
+    {
+        int strap = first_row() + row;
+        switch(column)
+        {
+        case COLUMN_MHZ:
+            return straps.get_clk_range(strap) / 100;
+        case COLUMN_HEX:
+            // only ever called on the EDT, so the buffers can be shared
+            straps.get_latency(strap, latency_buffer);
+            Hex.encode(latency_buffer, 0, StrapTable.LATENCY_SIZE, hex_buffer, 0);
+            return new String(hex_buffer);
+        default:
+            return straps.get_field(strap, FIELDS[column - FIRST_FIELD_COLUMN]);
+        }
+    }
+
+    /*
+     * works out the new ucLatency and hands it to the listener
+     * invalid values are dropped with an error beep
+     */
+    @Override
+    public void setValueAt(Object value, int row, int column)
+    {
+        int strap = first_row() + row;
+        byte[] latency;
+        if(column == COLUMN_HEX)
+            latency = hex_to_bytes(value.toString().trim());
+        else
+        {
+            latency = straps.get_latency(strap);
+            StrapField field = FIELDS[column - FIRST_FIELD_COLUMN];
+            int v = (Integer)value;
+            if(v < 0 || v > field.max()) latency = null;
+            else field.set(latency, v);
+        }
+
+        if(latency == null)
+        {
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+        if(!straps.latency_equals(strap, latency))
+            listener.strap_edited(index, straps.get_clk_range(strap), latency);
+    }
+
+    private int first_row()
+    {
+        return straps.first_row(index);
+    }
+
+    /*
+     * returns null unless s is exactly one strap's worth of hex digits
+     */
+    static byte[] hex_to_bytes(String s)
+    {
+        if(s.length() != 2 * StrapTable.LATENCY_SIZE) return null;
+
+        byte[] bytes = new byte[StrapTable.LATENCY_SIZE];
+        return Hex.decode(s, 0, s.length(), bytes, 0) ? bytes : null;
+    }
+
+    private static StrapField[] bit_fields()
+    {
+        ArrayList<StrapField> fields = new ArrayList<>();
+        for(StrapField f : StrapField.values())
+        {
+            // whole registers are edited through the hex column
+            if(f.width() < 32) fields.add(f);
+        }
+
+        return fields.toArray(new StrapField[0]);
+    }
+
+    private static final StrapField[] FIELDS = bit_fields();
+    private static final long serialVersionUID = 1L;
+
+    private final EditListener listener;
+    private StrapTable straps;
+    private byte index;
+    private boolean show_fields;
+    private final byte[] latency_buffer = new byte[StrapTable.LATENCY_SIZE];
+    private final char[] hex_buffer = new char[2 * StrapTable.LATENCY_SIZE];
+}
\ No newline at end of file
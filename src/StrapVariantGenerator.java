@@ -0,0 +1,493 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * generates the ROMs of a sweep over strap fields
+ * each axis adds one of its deltas to a StrapField of a set of straps, and
+ * the variants are every combination of one delta per axis
+ * a variant is never a copy of the image: it is the base snapshot, shared by
+ * all of them, plus an overlay of the dwords it changes and the checksum byte,
+ * fixed from what the overlay adds to the sum, and is written out with one
+ * gathering write of base slices and overlay
+ *
+ * usage: StrapVariantGenerator [-j N] [-m MB] [-p PREFIX] -o DIR BASE.rom AXIS...
+ *   AXIS is FIELD@INDEX:FROM_MHZ[:TO_MHZ]=DELTAS, INDEX can be *, DELTAS
+ *   is a list like -1,0,2 or a range like -2..2
+ *   e.g. CAS_TCL@0:1750:2000=-2..0 RAS_TRCDR@*:2000=-1,0
+ */
+public class StrapVariantGenerator
+{
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    private static final String USAGE =
+        "usage: StrapVariantGenerator [options] -o DIR BASE.rom FIELD@INDEX:FROM_MHZ[:TO_MHZ]=DELTAS...\n" +
+        "  -o, --out DIR      write the variants and variants.csv to DIR\n" +
+        "  -p, --prefix NAME  name the variants NAME.000000.rom... (default: the base ROM's name)\n" +
+        "  -j, --jobs N       number of variants to write in parallel (default: number of CPUs)\n" +
+        "  -m, --memory MB    bound on the memory held by variants waiting to be written (default: 64)";
+
+    /*
+     * one dimension of the sweep
+     */
+    public static class Axis
+    {
+        /*
+         * the straps of index (or StrapPatch.ALL_INDICES) from from_mhz to to_mhz, inclusive
+         */
+        public Axis(StrapField field, int index, int from_mhz, int to_mhz, int[] deltas)
+        {
+            if(deltas.length == 0)
+                throw new IllegalArgumentException("an axis needs at least one delta");
+
+            this.field = field;
+            this.index = index;
+            this.from_mhz = from_mhz;
+            this.to_mhz = to_mhz;
+            this.deltas = deltas;
+        }
+
+        public static Axis parse(String spec) throws IllegalArgumentException
+        {
+            int at = spec.indexOf('@'), eq = spec.indexOf('=', at + 1);
+            String[] straps = at == -1 || eq == -1 ? new String[0] : spec.substring(at + 1, eq).split(":");
+            if(at <= 0 || straps.length < 2 || straps.length > 3)
+                throw new IllegalArgumentException("invalid axis \"" + spec + "\", expected FIELD@INDEX:FROM_MHZ[:TO_MHZ]=DELTAS");
+
+            StrapField field;
+            try
+            {
+                field = StrapField.valueOf(spec.substring(0, at).toUpperCase());
+            }
+            catch(IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("unknown strap field in \"" + spec + "\"");
+            }
+
+            try
+            {
+                int index = straps[0].equals("*") ? StrapPatch.ALL_INDICES : Integer.parseInt(straps[0]);
+                int from = Integer.parseInt(straps[1]);
+                int to = straps.length == 3 ? Integer.parseInt(straps[2]) : from;
+                if(index != StrapPatch.ALL_INDICES && (index < 0 || index > 255))
+                    throw new IllegalArgumentException("invalid RAM IC index in \"" + spec + "\"");
+                if(from <= 0 || to < from)
+                    throw new IllegalArgumentException("invalid frequency range in \"" + spec + "\"");
+
+                return new Axis(field, index, from, to, parse_deltas(spec.substring(eq + 1)));
+            }
+            catch(NumberFormatException e)
+            {
+                throw new IllegalArgumentException("invalid axis \"" + spec + "\", expected FIELD@INDEX:FROM_MHZ[:TO_MHZ]=DELTAS");
+            }
+        }
+
+        boolean selects(byte ucIndex, int clk_range)
+        {
+            return (index == StrapPatch.ALL_INDICES || Byte.toUnsignedInt(ucIndex) == index)
+                && clk_range >= from_mhz * 100 && clk_range <= to_mhz * 100;
+        }
+
+        @Override
+        public String toString()
+        {
+            return field + "@" + (index == StrapPatch.ALL_INDICES ? "*" : String.valueOf(index)) + ":" + from_mhz +
+                   (to_mhz == from_mhz ? "" : ":" + to_mhz);
+        }
+
+        private static int[] parse_deltas(String s) throws NumberFormatException
+        {
+            int range = s.indexOf("..");
+            if(range != -1)
+            {
+                int first = Integer.parseInt(s.substring(0, range)), last = Integer.parseInt(s.substring(range + 2));
+                if(last < first) throw new NumberFormatException();
+
+                int[] deltas = new int[last - first + 1];
+                for(int i = 0; i < deltas.length; i++)
+                    deltas[i] = first + i;
+                return deltas;
+            }
+
+            String[] parts = s.split(",");
+            int[] deltas = new int[parts.length];
+            for(int i = 0; i < parts.length; i++)
+                deltas[i] = Integer.parseInt(parts[i].trim());
+            return deltas;
+        }
+
+        public final StrapField field;
+        public final int index, from_mhz, to_mhz;
+        public final int[] deltas;
+    }
+
+    /*
+     * the dwords one variant changes, sorted by offset, and its checksum byte
+     */
+    public static class Variant
+    {
+        Variant(long number, int[] deltas, int[] offsets, int[] dwords, byte checksum)
+        {
+            this.number = number;
+            this.deltas = deltas;
+            this.offsets = offsets;
+            this.dwords = dwords;
+            this.checksum = checksum;
+        }
+
+        public final long number;
+        public final int[] deltas;      // the delta of each axis
+        final int[] offsets, dwords;    // absolute offsets
+        final byte checksum;
+    }
+
+    public static void main(String[] args)
+    {
+        ArrayList<String> inputs = new ArrayList<>();
+        Path out_dir = null;
+        String prefix = null;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        long memory_budget = DEFAULT_MEMORY_BUDGET;
+        ArrayList<Axis> axes = new ArrayList<>();
+        try
+        {
+            for(int i = 0; i < args.length; i++)
+            {
+                switch(args[i])
+                {
+                case "-o": case "--out":
+                    out_dir = Paths.get(next_arg(args, ++i));
+                    break;
+                case "-p": case "--prefix":
+                    prefix = next_arg(args, ++i);
+                    break;
+                case "-j": case "--jobs":
+                    jobs = Integer.parseInt(next_arg(args, ++i));
+                    if(jobs < 1) throw new IllegalArgumentException("--jobs must be at least 1");
+                    break;
+                case "-m": case "--memory":
+                    memory_budget = Long.parseLong(next_arg(args, ++i)) * 1024 * 1024;
+                    if(memory_budget <= 0) throw new IllegalArgumentException("--memory must be at least 1");
+                    break;
+                default:
+                    if(args[i].startsWith("-") && !args[i].contains("@"))
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                    inputs.add(args[i]);
+                }
+            }
+
+            if(out_dir == null || inputs.size() < 2)
+                throw new IllegalArgumentException("expected --out, a base ROM and at least one axis");
+            for(String spec : inputs.subList(1, inputs.size()))
+                axes.add(Axis.parse(spec));
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        Path base = Paths.get(inputs.get(0));
+        if(prefix == null)
+        {
+            prefix = base.getFileName().toString();
+            if(prefix.lastIndexOf('.') > 0) prefix = prefix.substring(0, prefix.lastIndexOf('.'));
+        }
+
+        try
+        {
+            StrapVariantGenerator generator = new StrapVariantGenerator(new TimingsEditor(base.toString()), axes);
+            Files.createDirectories(out_dir);
+            long written = generator.write_all(out_dir, prefix, jobs, memory_budget);
+            System.out.println(String.format("%d variants written to %s, %d skipped with a field out of range",
+                written, out_dir, generator.size() - written));
+        }
+        catch(IOException | IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        catch(InterruptedException e)
+        {
+            System.exit(1);
+        }
+    }
+
+    /*
+     * takes a snapshot of base, later edits to it don't change the variants
+     * throws if an axis doesn't select any strap
+     */
+    public StrapVariantGenerator(TimingsEditor base, List<Axis> axes) throws IllegalArgumentException
+    {
+        if(!base.has_strap_fields())
+            throw new IllegalArgumentException("strap fields are only known for GDDR5 Polaris BIOSes");
+
+        this.axes = new ArrayList<>(axes);
+        snapshot = base.snapshot();
+        image = snapshot.buffer();
+        checksum_size = Math.min(Byte.toUnsignedInt(image.get(2)) * 512, image.limit());
+
+        StrapTable table = snapshot.get_strap_table();
+        if(table == null)
+            throw new IllegalArgumentException("failed to find the straps");
+
+        latency_offsets = new int[axes.size()][];
+        for(int a = 0; a < axes.size(); a++)
+        {
+            Axis axis = axes.get(a);
+            int[] offsets = new int[table.size()];
+            int n = 0;
+            for(int row = 0; row < table.size(); row++)
+            {
+                byte index = table.get_index(row);
+                int clk_range = table.get_clk_range(row);
+                // a strap repeated in the ROM has the same offset, as in the editor, don't add its delta twice
+                if(row > 0 && table.get_index(row - 1) == index && table.get_clk_range(row - 1) == clk_range)
+                    continue;
+
+                if(axis.selects(index, clk_range))
+                    offsets[n++] = base.get_strap_offset(index, clk_range) + 4;
+            }
+            if(n == 0)
+                throw new IllegalArgumentException("no strap matches " + axis);
+
+            latency_offsets[a] = Arrays.copyOf(offsets, n);
+            overlay_dwords += n;
+        }
+    }
+
+    /*
+     * the number of variants, the product of the number of deltas of each axis
+     */
+    public long size() throws IllegalArgumentException
+    {
+        long size = 1;
+        try
+        {
+            for(Axis axis : axes)
+                size = Math.multiplyExact(size, axis.deltas.length);
+        }
+        catch(ArithmeticException e)
+        {
+            throw new IllegalArgumentException("too many variants");
+        }
+
+        return size;
+    }
+
+    /*
+     * returns variant n, 0 <= n < size(), the first axis changes slowest
+     * returns null if its deltas take a field below 0 or above its max()
+     */
+    public Variant variant(long n)
+    {
+        int[] deltas = new int[axes.size()];
+        long rest = n;
+        for(int a = axes.size() - 1; a >= 0; a--)
+        {
+            int[] d = axes.get(a).deltas;
+            deltas[a] = d[(int)(rest % d.length)];
+            rest /= d.length;
+        }
+
+        // axes on fields of the same register build on each other's dword
+        TreeMap<Integer, Integer> overlay = new TreeMap<>();
+        for(int a = 0; a < axes.size(); a++)
+        {
+            StrapField field = axes.get(a).field;
+            for(int latency_offset : latency_offsets[a])
+            {
+                int offset = latency_offset + field.offset();
+                Integer current = overlay.get(offset);
+                int dword = current != null ? current : image.getInt(offset);
+
+                int value = field.extract(dword) + deltas[a];
+                if(field.width() < 32 && (value < 0 || value > field.max()))
+                    return null;
+                overlay.put(offset, field.insert(dword, value));
+            }
+        }
+
+        int[] offsets = new int[overlay.size()], dwords = new int[overlay.size()];
+        int count = 0, sum = 0;
+        for(Map.Entry<Integer, Integer> e : overlay.entrySet())
+        {
+            int offset = e.getKey(), dword = e.getValue(), old = image.getInt(offset);
+            if(dword == old) continue;
+
+            for(int i = 0; i < 4 && offset + i < checksum_size; i++)
+                sum += (byte)(dword >> (8 * i)) - (byte)(old >> (8 * i));
+            offsets[count] = offset;
+            dwords[count++] = dword;
+        }
+
+        // the snapshot's checksum is already fixed, so only the overlay's share is left
+        byte checksum = (byte)(image.get(TimingsEditor.ATOM_ROM_CHECKSUM_OFFSET) - sum);
+        return new Variant(n, deltas, Arrays.copyOf(offsets, count), Arrays.copyOf(dwords, count), checksum);
+    }
+
+    /*
+     * returns the whole image of variant, for callers that want it in memory
+     */
+    public byte[] to_bytes(Variant variant)
+    {
+        byte[] bytes = snapshot.to_bytes();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for(int i = 0; i < variant.offsets.length; i++)
+            buffer.putInt(variant.offsets[i], variant.dwords[i]);
+        bytes[TimingsEditor.ATOM_ROM_CHECKSUM_OFFSET] = variant.checksum;
+
+        return bytes;
+    }
+
+    /*
+     * writes variant to path with a single gathering write of the shared
+     * base slices between the changed dwords and the overlay itself
+     */
+    public void write(Variant variant, Path path) throws IOException
+    {
+        long start = TimingsEditorMetrics.start();
+        boolean written = false;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            final int checksum_offset = TimingsEditor.ATOM_ROM_CHECKSUM_OFFSET;
+            ByteBuffer[] parts = new ByteBuffer[2 * variant.offsets.length + 3];
+            int n = 0;
+
+            // the straps all come after the ROM header, so the checksum byte is the first patch
+            parts[n++] = image.slice(0, checksum_offset);
+            parts[n++] = ByteBuffer.wrap(new byte[] { variant.checksum });
+            int position = checksum_offset + 1;
+            for(int i = 0; i < variant.offsets.length; i++)
+            {
+                parts[n++] = image.slice(position, variant.offsets[i] - position);
+                parts[n++] = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, variant.dwords[i]);
+                position = variant.offsets[i] + 4;
+            }
+            parts[n++] = image.slice(position, image.limit() - position);
+
+            for(long remaining = image.limit(); remaining > 0; )
+                remaining -= channel.write(parts, 0, n);
+            written = true;
+        }
+        finally
+        {
+            TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.WRITE, start, written ? image.limit() : 0, !written);
+        }
+    }
+
+    /*
+     * writes every variant whose fields stay in range to out_dir as
+     * PREFIX.NNNNNN.rom on jobs threads, and variants.csv listing the deltas of each
+     * variants are made as the pool frees up, at most as many are waiting as
+     * fit in memory_budget bytes, but always at least one
+     * a variant is only listed in variants.csv once its file is written, so the
+     * rows are in the order the writes finished
+     * returns the number of variants written
+     */
+    public long write_all(Path out_dir, String prefix, int jobs, long memory_budget) throws IOException, InterruptedException
+    {
+        long count = size();
+        // the overlay, its boxed offsets while it's built and a ByteBuffer per write segment
+        long footprint = 256 + 160L * overlay_dwords;
+        Semaphore in_flight = new Semaphore((int)Math.max(1, Math.min(jobs, memory_budget / footprint)));
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        AtomicLong written = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+
+        try(BufferedWriter manifest = Files.newBufferedWriter(out_dir.resolve("variants.csv"), StandardCharsets.UTF_8))
+        {
+            manifest.write("file");
+            for(Axis axis : axes)
+                manifest.write("," + axis);
+            manifest.write('\n');
+
+            try
+            {
+                for(long n = 0; n < count && failure.get() == null; n++)
+                {
+                    Variant variant = variant(n);
+                    if(variant == null) continue;
+
+                    String name = String.format("%s.%06d.rom", prefix, n);
+                    in_flight.acquire();
+                    pool.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            try
+                            {
+                                write(variant, out_dir.resolve(name));
+
+                                StringBuilder row = new StringBuilder(name);
+                                for(int delta : variant.deltas)
+                                    row.append(',').append(delta);
+                                row.append('\n');
+                                synchronized(manifest)
+                                {
+                                    manifest.write(row.toString());
+                                }
+                                written.incrementAndGet();
+                            }
+                            catch(IOException e)
+                            {
+                                failure.compareAndSet(null, e);
+                            }
+                            finally
+                            {
+                                in_flight.release();
+                            }
+                        }
+                    });
+                }
+            }
+            finally
+            {
+                // the workers write to the manifest, so they have to finish before it's closed
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        if(failure.get() != null)
+            throw failure.get();
+
+        return written.get();
+    }
+
+    private static String next_arg(String[] args, int i)
+    {
+        if(i >= args.length)
+            throw new IllegalArgumentException("missing value for " + args[i - 1]);
+
+        return args[i];
+    }
+
+    private final ArrayList<Axis> axes;
+    private final RomSnapshot snapshot;
+    private final ByteBuffer image;         // read only, shared by every variant
+    private final int checksum_size;
+    // latency_offsets[a] holds the absolute offset of the ucLatency of every strap axis a selects
+    private final int[][] latency_offsets;
+    private int overlay_dwords;
+}
\ No newline at end of file
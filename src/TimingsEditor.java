@@ -2,274 +2,1346 @@ import java.io.IOException;
 import java.lang.IllegalArgumentException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * thread safety: a single read/write lock guards the image and everything
+ * kept about it, the checksum, the edit history and the dirty ranges
+ * writes, undo, redo and save_bios() hold the write lock, so they run one at a time
+ * getters, snapshot(), to_bytes() and create_patch() hold the read lock, so
+ * they never see a strap half written and run in parallel with each other
+ * a snapshot is a full copy of the image, taking one holds up writers for a copy
+ */
+public class TimingsEditor
+{
+    // TODO: handle VRAM_MODULE_V7
+    public static void main(String[] args)
+    {
+        TimingsEditorCLI.main(args);
+    }
+
+    private static void print_timings(ATOM_VRAM_TIMING_ENTRY e)
+    {
+        System.out.println(String.format("%d\t%d", e.ulClkRange, e.ucIndex));
+        for(byte b : e.ucLatency)
+            System.out.print(String.format("0x%02X ", b));
+    }
+
+    public TimingsEditor(String bios_file) throws IllegalArgumentException
+    {
+        this(bios_file, false);
+    }
+
+    /*
+     * if mapped is true, bios_file is opened through a private memory mapping
+     * instead of being read into the heap
+     * edits only touch the mapping until save_bios() writes the dirty ranges out
+     * a private mapping needs a writable channel, so a file we can't write is
+     * read into the heap anyway and can only be saved to another file
+     */
+    public TimingsEditor(String bios_file, boolean mapped) throws IllegalArgumentException
+    {
+        Path path = Paths.get(bios_file);
+        try
+        {
+            long start = TimingsEditorMetrics.start();
+            try
+            {
+                if(mapped && Files.isWritable(path))
+                {
+                    try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE))
+                    {
+                        bios = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+                    }
+                    bios_path = path;
+                }
+                else bios = ByteBuffer.wrap(Files.readAllBytes(path));
+                bios.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            finally
+            {
+                TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.READ, start, bios == null ? 0 : bios.limit(), bios == null);
+            }
+
+            if(!init())
+                throw new IllegalArgumentException("Invalid BIOS file");
+        }
+        catch(IOException e)
+        {
+            System.err.println("failed to read " + bios_file);
+            e.printStackTrace();
+            throw new IllegalArgumentException("failed to read " + bios_file);
+        }
+    }
+
+    /*
+     * edits bios_bytes in place, the array isn't copied
+     */
+    public TimingsEditor(byte[] bios_bytes) throws IllegalArgumentException
+    {
+        bios = ByteBuffer.wrap(bios_bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if(!init())
+            throw new IllegalArgumentException("Invalid BIOS file");
+    }
+
+    /*
+     * copies the image of base into the heap and shares what base has
+     * already parsed, none of which changes when straps are edited
+     */
+    private TimingsEditor(TimingsEditor base)
+    {
+        base.lock.readLock().lock();
+        try
+        {
+            byte[] image = new byte[base.bios.limit()];
+            base.bios.get(0, image);
+            bios = ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN);
+            checksum_size = base.checksum_size;
+            checksum_sum = base.checksum_sum;
+        }
+        finally
+        {
+            base.lock.readLock().unlock();
+        }
+
+        rom_header = base.rom_header;
+        master_data_table = base.master_data_table;
+        strap_index = base.strap_index;
+        strap_count = base.strap_count;
+        VRAM_Timings_offset = base.VRAM_Timings_offset;
+        vram_info = base.vram_info;
+        part_numbers = base.part_numbers;
+    }
+
+    /*
+     * returns an independent editor for a copy of the current image, without parsing it again
+     * the copy is in the heap and has no edit history, edits to either one don't affect the other
+     */
+    public TimingsEditor copy()
+    {
+        return new TimingsEditor(this);
+    }
+
+    private boolean init()
+    {
+        // the legacy header ends with the pointer to ATOM_ROM_HEADER
+        if(bios.limit() < MIN_BIOS_SIZE)
+        {
+            System.err.println("the BIOS is only " + bios.limit() + " bytes");
+            return false;
+        }
+
+        long start = TimingsEditorMetrics.start();
+        compute_checksum();
+        TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.CHECKSUM, start, checksum_size, false);
+
+        start = TimingsEditorMetrics.start();
+        boolean found = false;
+        try
+        {
+            // find rom header
+            int rom_header_offset = locate_rom_header();
+            if(rom_header_offset == -1)
+            {
+                System.err.println("failed to find ATOM_ROM_HEADER");
+                return false;
+            }
+            rom_header = new ATOM_ROM_HEADER(bios, rom_header_offset);
+
+            // get master data table
+            master_data_table = new ATOM_MASTER_DATA_TABLE(bios, rom_header.usMasterDataTableOffset);
+
+            build_strap_index();
+            found = VRAM_Timings_offset != -1;
+        }
+        finally
+        {
+            TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.HEADER_SEARCH, start, 0, !found);
+        }
+
+        return true;
+    }
+
+    /*
+     * follows the pointer to ATOM_ROM_HEADER stored in the legacy header
+     * falls back to searching for the header if it doesn't point at "ATOM"
+     * returns -1 if not found
+     */
+    private int locate_rom_header()
+    {
+        final int rom_header_pointer_offset = 0x48;
+
+        if(bios.limit() >= rom_header_pointer_offset + 2)
+        {
+            int offset = uint16(bios, rom_header_pointer_offset);
+            if(offset + ATOM_ROM_HEADER.size <= bios.limit() && 
+               bios.getInt(offset + 4) == ATOM_ROM_HEADER.ATOM_BIOS_SIGNATURE)
+                return offset;
+        }
+
+        byte[] rom_header_needle = { (byte)0x24, (byte)0x00, (byte)0x01, (byte)0x01 };
+        return find_bytes(bios, 0, bios.limit(), rom_header_needle);
+    }
+
+    /*
+     * locates the timing table once and records the absolute offset of
+     * every strap in bios, keyed by strap_key(ucIndex, ulClkRange)
+     * leaves the index empty if the straps can't be found
+     */
+    private void build_strap_index()
+    {
+        strap_index = new HashMap<>();
+        strap_count = 0;
+        VRAM_Timings_offset = -1;
+
+        ATOM_VRAM_INFO vram_info = get_vram_info();
+        int vram_info_end = Math.min(vram_info.offset + vram_info.sHeader.usStructureSize, bios.limit());
+
+        VRAM_Timings_offset = locate_timing_table(vram_info, vram_info_end);
+        if(VRAM_Timings_offset == -1)
+        {
+            // find the 400MHz strap in all of vram_info structure
+            byte[] needle = { (byte)0x40, (byte)0x9C, (byte)0x00 };
+            VRAM_Timings_offset = find_bytes(bios, vram_info.offset, vram_info_end, needle);
+        }
+        if(VRAM_Timings_offset == -1)
+        {
+            System.err.println("failed to find the straps in BIOS");
+            return;
+        }
+
+        // the table ends with a 0 clock, or at the end of vram_info
+        for(int offset = VRAM_Timings_offset; offset + ATOM_VRAM_TIMING_ENTRY.size <= vram_info_end; 
+            offset += ATOM_VRAM_TIMING_ENTRY.size)
+        {
+            int clk_range = uint24(bios, offset);
+            if(clk_range == 0) break;
+
+            // keep the first occurrence, as the old needle search did
+            strap_index.putIfAbsent(strap_key(bios.get(offset + 3), clk_range), offset);
+            strap_count++;
+        }
+    }
+
+    /*
+     * usMemClkPatchTblOffset points to an ATOM_INIT_REG_BLOCK after the modules:
+     * usRegIndexTblSize, usRegDataBlkSize, the register index table and then
+     * the straps, each usRegDataBlkSize bytes
+     * returns the absolute offset of the first strap
+     * returns -1 if the structure isn't consistent with that
+     */
+    private int locate_timing_table(ATOM_VRAM_INFO vram_info, int vram_info_end)
+    {
+        if(vram_info.usMemClkPatchTblOffset == 0)
+            return -1;
+
+        int block = vram_info.offset + vram_info.usMemClkPatchTblOffset;
+        if(block < vram_info.offset + vram_info.size || block + 4 > vram_info_end)
+            return -1;
+
+        int reg_index_tbl_size = uint16(bios, block);
+        int reg_data_blk_size = uint16(bios, block + 2);
+        if(reg_data_blk_size != ATOM_VRAM_TIMING_ENTRY.size)
+            return -1;
+
+        int first = block + 4 + reg_index_tbl_size;
+        if(first + ATOM_VRAM_TIMING_ENTRY.size > vram_info_end || uint24(bios, first) == 0)
+            return -1;
+
+        return first;
+    }
+
+    /*
+     * ulClkRange is only 3 bytes, so ucIndex fits in the top byte
+     */
+    private static int strap_key(byte index, int clk_range)
+    {
+        return Byte.toUnsignedInt(index) << 24 | (clk_range & 0xFFFFFF);
+    }
+
+    /*
+     * copies every strap into a flat StrapTable, sorted by (ucIndex, ulClkRange)
+     * returns null if the straps weren't found
+     */
+    public StrapTable get_strap_table()
+    {
+        long start = TimingsEditorMetrics.start();
+        if(VRAM_Timings_offset == -1)
+        {
+            System.err.println("failed to find the straps in BIOS");
+            TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.GET_TIMINGS, start, 0, true);
+            return null;
+        }
+
+        StrapTable table;
+        lock.readLock().lock();
+        try
+        {
+            table = read_strap_table(bios, VRAM_Timings_offset, strap_count);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.GET_TIMINGS, start, (long)strap_count * StrapTable.LATENCY_SIZE, false);
+
+        return table;
+    }
+
+    /*
+     * copies the count straps starting at timings_offset in bios into a StrapTable
+     */
+    static StrapTable read_strap_table(ByteBuffer bios, int timings_offset, int count)
+    {
+        int[] clk_ranges = new int[count];
+        byte[] indices = new byte[count];
+        byte[] latencies = new byte[count * StrapTable.LATENCY_SIZE];
+        for(int i = 0, offset = timings_offset; i < count; i++, offset += ATOM_VRAM_TIMING_ENTRY.size)
+        {
+            clk_ranges[i] = uint24(bios, offset);
+            indices[i] = bios.get(offset + 3);
+            bios.get(offset + 4, latencies, i * StrapTable.LATENCY_SIZE, StrapTable.LATENCY_SIZE);
+        }
+
+        return new StrapTable(clk_ranges, indices, latencies);
+    }
+
+    public ArrayList<ATOM_VRAM_TIMING_ENTRY> get_timings()
+    {
+        long start = TimingsEditorMetrics.start();
+        if(VRAM_Timings_offset == -1)
+        {
+            System.err.println("failed to find the straps in BIOS");
+            TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.GET_TIMINGS, start, 0, true);
+            return null;
+        }
+
+        ArrayList<ATOM_VRAM_TIMING_ENTRY> vram_timing_entries = new ArrayList<>(strap_count);
+        lock.readLock().lock();
+        try
+        {
+            for(int i = 0, offset = VRAM_Timings_offset; i < strap_count; i++, offset += ATOM_VRAM_TIMING_ENTRY.size)
+                vram_timing_entries.add(new ATOM_VRAM_TIMING_ENTRY(bios, offset));
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.GET_TIMINGS, start, (long)strap_count * ATOM_VRAM_TIMING_ENTRY.size, false);
+        return vram_timing_entries;
+    }
+
+    /*
+     * returns the absolute offset of the strap for index at clk_range (in 10kHz)
+     * returns -1 if there is no such strap, including for clocks ulClkRange can't hold
+     */
+    int get_strap_offset(byte index, int clk_range)
+    {
+        // the key only keeps 24 bits of the clock, a bigger one would find a real strap
+        if(clk_range < 0 || clk_range > StrapTable.MAX_CLK_RANGE) return -1;
+        Integer offset = strap_index.get(strap_key(index, clk_range));
+
+        return offset == null ? -1 : offset;
+    }
+
+    /*
+     * returns the strap for index at clk_range (in 10kHz)
+     * returns null if there is no such strap
+     */
+    public ATOM_VRAM_TIMING_ENTRY get_timings(byte index, int clk_range)
+    {
+        int offset = get_strap_offset(index, clk_range);
+        if(offset == -1) return null;
+
+        lock.readLock().lock();
+        try
+        {
+            return new ATOM_VRAM_TIMING_ENTRY(bios, offset);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * parsed on first use and cached until a write touches the
+     * VRAM_Info header or its modules
+     * readers that miss the cache at the same time each parse it, the results are the same
+     */
+    public ATOM_VRAM_INFO get_vram_info()
+    {
+        ATOM_VRAM_INFO info = vram_info;
+        if(info == null)
+        {
+            long start = TimingsEditorMetrics.start();
+            // cached before the lock is released, so a write can't invalidate it first
+            lock.readLock().lock();
+            try
+            {
+                info = new ATOM_VRAM_INFO(bios, master_data_table.VRAM_Info);
+
+                String[] pns = new String[info.sModules.length];
+                for(int i = 0; i < pns.length; i++)
+                {
+                    if(info.sModules[i] instanceof ATOM_VRAM_MODULE_V7)
+                        pns[i] = ((ATOM_VRAM_MODULE_V7)info.sModules[i]).strMemPNString;
+                    else if(info.sModules[i] instanceof ATOM_VRAM_MODULE_V8)
+                        pns[i] = ((ATOM_VRAM_MODULE_V8)info.sModules[i]).strMemPNString;
+
+                    // the part number is padded with NULs
+                    if(pns[i] != null && pns[i].indexOf('\0') != -1)
+                        pns[i] = pns[i].substring(0, pns[i].indexOf('\0'));
+                }
+
+                part_numbers = pns;
+                vram_info = info;
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+            TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.VRAM_INFO, start, info.size, false);
+        }
+
+        return info;
+    }
+
+    /*
+     * returns the part number (strMemPNString) of the VRAM module for the RAM IC index
+     * returns null if there is no such module or it has no part number
+     */
+    public String get_part_number(int index)
+    {
+        get_vram_info();
+
+        String[] pns = part_numbers;
+        if(index < 0 || index >= pns.length) return null;
+
+        return pns[index];
+    }
+
+    /*
+     * a named [start, end) range of bios
+     */
+    public static class Section
+    {
+        Section(String name, int start, int end)
+        {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+
+        public final String name;
+        public final int start, end;
+    }
+
+    /*
+     * returns the structures this editor knows about, sorted by start and not overlapping
+     * bytes outside of them aren't parsed
+     */
+    public ArrayList<Section> get_sections()
+    {
+        final int atom_rom_checksum_offset = 0x21;
+
+        ArrayList<Section> sections = new ArrayList<>();
+        sections.add(new Section("checksum", atom_rom_checksum_offset, atom_rom_checksum_offset + 1));
+        sections.add(new Section("ATOM_ROM_HEADER", rom_header.offset, rom_header.offset + ATOM_ROM_HEADER.size));
+        sections.add(new Section("ATOM_MASTER_DATA_TABLE", master_data_table.offset, master_data_table.offset + ATOM_MASTER_DATA_TABLE.size));
+
+        ATOM_VRAM_INFO info = get_vram_info();
+        int modules_start = info.offset + ATOM_COMMON_TABLE_HEADER.size + 16;
+        sections.add(new Section("ATOM_VRAM_INFO", info.offset, modules_start));
+        for(int i = 0; i < info.sModules.length; i++)
+        {
+            int offset, size;
+            if(info.sModules[i] instanceof ATOM_VRAM_MODULE_V7)
+            {
+                offset = ((ATOM_VRAM_MODULE_V7)info.sModules[i]).offset;
+                size = ((ATOM_VRAM_MODULE_V7)info.sModules[i]).size;
+            }
+            else
+            {
+                offset = ((ATOM_VRAM_MODULE_V8)info.sModules[i]).offset;
+                size = ((ATOM_VRAM_MODULE_V8)info.sModules[i]).size;
+            }
+            String part_number = get_part_number(i);
+            String name = "ATOM_VRAM_MODULE[" + i + "]" + (part_number == null ? "" : " " + part_number);
+            sections.add(new Section(name, offset, offset + size));
+        }
+
+        if(VRAM_Timings_offset != -1)
+        {
+            // register index table in front of the straps, if they were found by walking it
+            int block = info.offset + info.usMemClkPatchTblOffset;
+            if(info.usMemClkPatchTblOffset != 0 && block >= info.offset + info.size && block < VRAM_Timings_offset)
+                sections.add(new Section("ATOM_INIT_REG_BLOCK", block, VRAM_Timings_offset));
+
+            // the table layout doesn't change, but its bytes can be written at any time
+            lock.readLock().lock();
+            try
+            {
+                for(int i = 0, offset = VRAM_Timings_offset; i < strap_count; i++, offset += ATOM_VRAM_TIMING_ENTRY.size)
+                {
+                    String name = "ATOM_VRAM_TIMING_ENTRY[index " + Byte.toUnsignedInt(bios.get(offset + 3)) +
+                                  ", " + uint24(bios, offset) / 100 + "MHz]";
+                    sections.add(new Section(name, offset, offset + ATOM_VRAM_TIMING_ENTRY.size));
+                }
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+        }
+
+        sections.sort(new Comparator<Section>()
+        {
+            @Override
+            public int compare(Section a, Section b)
+            {
+                return Integer.compare(a.start, b.start);
+            }
+        });
+
+        return sections;
+    }
+
+    private void invalidate_vram_info(int start, int end)
+    {
+        ATOM_VRAM_INFO info = vram_info;
+        if(info != null && start < info.offset + info.size && end > info.offset)
+            vram_info = null;
+    }
+
+    /*
+     * looks up timings.ulClkRange and timings.ucIndex in the strap index and
+     * overwrites ucLatency in bios with timings.ucLatency
+     * returns false, if it isn't found
+     * otherwise, returns true
+     */
+    public boolean set_timings(ATOM_VRAM_TIMING_ENTRY timings)
+    {
+        return set_timings(timings.ucIndex, timings.ulClkRange, timings.ucLatency);
+    }
+
+    /*
+     * same as set_timings(ATOM_VRAM_TIMING_ENTRY), without needing an entry
+     */
+    public boolean set_timings(byte index, int clk_range, byte[] latency)
+    {
+        long start = TimingsEditorMetrics.start();
+        int offset = get_strap_offset(index, clk_range);
+        if(offset == -1)
+        {
+            System.err.println(String.format("failed to find timings for index %d %dkHz", 
+                index, clk_range));
+            TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.SET_TIMINGS, start, 0, true);
+            return false;
+        }
+        if(latency.length != StrapTable.LATENCY_SIZE)
+            throw new IllegalArgumentException("set_timings: expected " + StrapTable.LATENCY_SIZE + " bytes of latency");
+
+        // overwrite timings, skipping ulClkRange and ucIndex
+        write_bytes(offset + 4, latency);
+        TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.SET_TIMINGS, start, latency.length, false);
+        return true;
+    }
+
+    /*
+     * StrapField is the layout of GDDR5 Polaris straps, VRAM_Info with
+     * ATOM_VRAM_MODULE_V8 modules of a GDDR5 memory type
+     * returns false for any other BIOS, its fields would decode the wrong bits
+     */
+    public boolean has_strap_fields()
+    {
+        ATOM_VRAM_INFO info = get_vram_info();
+        if(info.ucVramModuleVer != 8 || info.sModules.length == 0)
+            return false;
+
+        for(ATOM_VRAM_MODULE module : info.sModules)
+        {
+            if((((ATOM_VRAM_MODULE_V8)module).ucMemoryType & 0xF0) != MEMORY_TYPE_GDDR5)
+                return false;
+        }
+
+        return true;
+    }
+
+    private void check_strap_fields() throws IllegalArgumentException
+    {
+        if(!has_strap_fields())
+            throw new IllegalArgumentException("strap fields are only known for GDDR5 Polaris BIOSes");
+    }
+
+    /*
+     * decodes one field of the strap for index at clk_range straight from bios
+     */
+    public int get_field(byte index, int clk_range, StrapField field) throws IllegalArgumentException
+    {
+        check_strap_fields();
+        int offset = get_strap_offset(index, clk_range);
+        if(offset == -1)
+            throw new IllegalArgumentException(String.format("no strap for index %d %dkHz", index, clk_range));
+
+        lock.readLock().lock();
+        try
+        {
+            return field.get(bios, offset + 4);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * re-encodes one field of the strap for index at clk_range, only its dword is written
+     * returns false, if the strap isn't found
+     */
+    public boolean set_field(byte index, int clk_range, StrapField field, int value) throws IllegalArgumentException
+    {
+        check_strap_fields();
+        int offset = get_strap_offset(index, clk_range);
+        if(offset == -1)
+        {
+            System.err.println(String.format("failed to find timings for index %d %dkHz", 
+                index, clk_range));
+            return false;
+        }
+
+        write_field(offset + 4, field, value);
+        return true;
+    }
+
+    /*
+     * returns field of every strap, in the order of get_timings()
+     */
+    public int[] get_field(StrapField field) throws IllegalArgumentException
+    {
+        check_strap_fields();
+        int[] values = new int[strap_count];
+        lock.readLock().lock();
+        try
+        {
+            for(int i = 0, offset = VRAM_Timings_offset; i < strap_count; i++, offset += ATOM_VRAM_TIMING_ENTRY.size)
+                values[i] = field.get(bios, offset + 4);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        return values;
+    }
+
+    /*
+     * sets field of every strap to value
+     * returns the number of straps that changed
+     */
+    public int set_field(StrapField field, int value) throws IllegalArgumentException
+    {
+        int[] values = new int[strap_count];
+        Arrays.fill(values, value);
+
+        return set_field(field, values);
+    }
+
+    /*
+     * sets field of strap i, in the order of get_timings(), to values[i]
+     * straps that already hold their value aren't written
+     * returns the number of straps that changed
+     */
+    public int set_field(StrapField field, int[] values) throws IllegalArgumentException
+    {
+        check_strap_fields();
+        if(values.length != strap_count)
+            throw new IllegalArgumentException("set_field: expected a value for each of the " + strap_count + " straps");
+
+        int changed = 0;
+        lock.writeLock().lock();
+        try
+        {
+            for(int i = 0, offset = VRAM_Timings_offset; i < strap_count; i++, offset += ATOM_VRAM_TIMING_ENTRY.size)
+            {
+                if(field.get(bios, offset + 4) == values[i])
+                    continue;
+
+                write_field(offset + 4, field, values[i]);
+                changed++;
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        return changed;
+    }
+
+    /*
+     * copies the strap at from_clk_range of each of indices onto every strap
+     * of the same index above it, up to and including to_clk_range
+     * only the bits of fields are copied, all of the strap if fields is null
+     * the targets are found in one pass over the straps and written as a
+     * single edit, with one checksum and history update
+     * indices without a strap at from_clk_range are skipped
+     * returns the number of straps that changed
+     * throws if fields are given and the BIOS doesn't has_strap_fields()
+     */
+    public int propagate_strap(byte[] indices, int from_clk_range, int to_clk_range, StrapField[] fields) throws IllegalArgumentException
+    {
+        long start = TimingsEditorMetrics.start();
+        if(VRAM_Timings_offset == -1)
+        {
+            TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.SET_TIMINGS, start, 0, true);
+            throw new IllegalArgumentException("failed to find the straps");
+        }
+
+        if(fields != null) check_strap_fields();
+        byte[] mask = fields == null ? null : StrapField.mask(fields);
+        // latency offset of the source strap, by index
+        int[] sources = new int[256];
+        Arrays.fill(sources, -1);
+        for(byte index : indices)
+        {
+            int offset = get_strap_offset(index, from_clk_range);
+            if(offset != -1) sources[Byte.toUnsignedInt(index)] = offset + 4;
+        }
+
+        int table_start = VRAM_Timings_offset, table_end = table_start + strap_count * ATOM_VRAM_TIMING_ENTRY.size;
+        byte[] src = new byte[StrapTable.LATENCY_SIZE], dst = new byte[StrapTable.LATENCY_SIZE];
+        int changed = 0, delta = 0;
 
-public class TimingsEditor
-{
-    // TODO: handle VRAM_MODULE_V7
-    public static void main(String[] args)
+        lock.writeLock().lock();
+        try
+        {
+            for(int offset = table_start; offset < table_end; offset += ATOM_VRAM_TIMING_ENTRY.size)
+            {
+                int source = sources[Byte.toUnsignedInt(bios.get(offset + 3))], clk_range = uint24(bios, offset);
+                if(source == -1 || clk_range <= from_clk_range || clk_range > to_clk_range)
+                    continue;
+
+                int latency_offset = offset + 4;
+                bios.get(source, src);
+                bios.get(latency_offset, dst);
+
+                boolean differs = false;
+                for(int i = 0; i < StrapTable.LATENCY_SIZE; i++)
+                {
+                    byte b = mask == null ? src[i] : (byte)(dst[i] & ~mask[i] | src[i] & mask[i]);
+                    differs |= b != dst[i];
+                    dst[i] = b;
+                }
+                if(!differs) continue;
+
+                delta += put_bytes(latency_offset, dst);
+                changed++;
+            }
+
+            if(changed > 0)
+                end_edit(table_start, table_end, delta);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.SET_TIMINGS, start, (long)changed * StrapTable.LATENCY_SIZE, false);
+        return changed;
+    }
+
+    /*
+     * masks value into the dword holding field in the ucLatency at latency_offset
+     */
+    private void write_field(int latency_offset, StrapField field, int value)
     {
-        final String bios_name = "Sapphire.R9380X.4096.151101.rom";
+        int offset = latency_offset + field.offset();
 
-        TimingsEditor te = new TimingsEditor(bios_name);
-        te.get_timings();
+        // the other fields of the dword can't change between reading and writing it
+        lock.writeLock().lock();
+        try
+        {
+            int dword = field.insert(bios.getInt(offset), value);
+            write_bytes(offset, new byte[] { (byte)dword, (byte)(dword >> 8), (byte)(dword >> 16), (byte)(dword >> 24) });
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
     }
 
-    private static void print_timings(ATOM_VRAM_TIMING_ENTRY e)
+    /*
+     * every modification of bios goes through here, so the modified
+     * range and the running checksum can be kept up to date
+     */
+    private void write_bytes(int offset, byte[] bytes)
     {
-        System.out.println(String.format("%d\t%d", e.ulClkRange, e.ucIndex));
-        for(byte b : e.ucLatency)
-            System.out.print(String.format("0x%02X ", b));
+        int end = offset + bytes.length;
+
+        lock.writeLock().lock();
+        try
+        {
+            int delta = put_bytes(offset, bytes);
+            if(offset <= 2 && end > 2)
+            {
+                // the size byte changes the range the checksum covers, so sum it again
+                int old_sum = checksum_sum;
+                compute_checksum();
+                delta = checksum_sum - old_sum;
+                checksum_sum = old_sum;
+            }
+
+            end_edit(offset, end, delta);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
     }
 
-    public TimingsEditor(String bios_file) throws IllegalArgumentException
+    /*
+     * puts bytes at offset, saving what they replace in the dirty ranges and the history
+     * returns what they add to the checksum sum, for the end_edit() of the edit they belong to
+     * called with the write lock held
+     */
+    private int put_bytes(int offset, byte[] bytes)
     {
-        Path path = Paths.get(bios_file);
+        int end = offset + bytes.length, delta = 0;
+        for(int i = offset, sum_end = Math.min(end, checksum_size); i < sum_end; i++)
+            delta += bytes[i - offset] - bios.get(i);
+
+        mark_dirty(offset, end, bios, offset);
+        history.before_write(bios, offset, end);
+        bios.put(offset, bytes);
+
+        return delta;
+    }
+
+    /*
+     * finishes an edit of [start, end) made of one or more put_bytes(), whose
+     * checksum deltas add up to delta, as one update of the sum
+     * called with the write lock held
+     */
+    private void end_edit(int start, int end, int delta)
+    {
+        checksum_sum += delta;
+        version++;
+        invalidate_vram_info(start, end);
+    }
+
+    private void write_byte(int offset, byte b)
+    {
+        write_bytes(offset, new byte[] { b });
+    }
+
+    /*
+     * returns an immutable copy of the image with the checksum fixed
+     * the copy is made under the read lock, so writers wait for it, but it
+     * never sees a write half done and later edits don't change it
+     */
+    public RomSnapshot snapshot()
+    {
+        get_vram_info();
+
+        lock.readLock().lock();
         try
         {
-            bios_bytes = Files.readAllBytes(path);
-            if(!init())
-                throw new IllegalArgumentException("Invalid BIOS file");
+            byte[] image = new byte[bios.limit()];
+            bios.get(0, image);
+            image[ATOM_ROM_CHECKSUM_OFFSET] = fixed_checksum();
+
+            return new RomSnapshot(image, version, VRAM_Timings_offset, strap_count, part_numbers);
         }
-        catch(IOException e)
+        finally
         {
-            System.err.println("failed to read " + bios_file);
-            e.printStackTrace();
+            lock.readLock().unlock();
         }
     }
 
-    private boolean init()
+    /*
+     * ends the current revision, so the next undo() stops here
+     * writes since the last checkpoint are undone together
+     */
+    public void checkpoint()
     {
-        // find rom header
-        byte[] rom_header_needle = { (byte)0x24, (byte)0x00, (byte)0x01, (byte)0x01 };
-        int rom_header_offset = find_bytes(bios_bytes, rom_header_needle);
-        if(rom_header_offset == -1)
+        lock.writeLock().lock();
+        try
         {
-            System.err.println("failed to find ATOM_ROM_HEADER");
-            return false;
+            history.checkpoint();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
         }
-        byte[] rom_header_bytes = new byte[ATOM_ROM_HEADER.size];
-        System.arraycopy(bios_bytes, rom_header_offset, rom_header_bytes, 0, ATOM_ROM_HEADER.size);
-        rom_header = new ATOM_ROM_HEADER(rom_header_bytes);
+    }
 
-        // get master data table
-        byte[] master_data_table_bytes = new byte[ATOM_MASTER_DATA_TABLE.size];
-        System.arraycopy(bios_bytes, rom_header.usMasterDataTableOffset, 
-                            master_data_table_bytes, 0, ATOM_MASTER_DATA_TABLE.size);                                                            
-        master_data_table = new ATOM_MASTER_DATA_TABLE(master_data_table_bytes);
+    /*
+     * reverts every write since the previous checkpoint
+     * returns false if there is nothing to undo
+     */
+    public boolean undo()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            return restore(history.undo(bios));
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
 
-        return true;
+    /*
+     * reapplies the writes of the last undo()
+     * returns false if there is nothing to redo
+     */
+    public boolean redo()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            return restore(history.redo(bios));
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
     }
 
-    public ArrayList<ATOM_VRAM_TIMING_ENTRY> get_timings()
+    public boolean can_undo()
     {
-        ATOM_VRAM_INFO vram_info = get_vram_info();
-        // for(ATOM_VRAM_MODULE m : vram_info.sModules)
-        // {
-        //     switch(vram_info.ucVramModuleVer)
-        //     {
-        //     case 7:
-        //         System.out.println(((ATOM_VRAM_MODULE_V7)m).strMemPNString);
-        //         break;
-        //     case 8:
-        //         System.out.println(((ATOM_VRAM_MODULE_V8)m).strMemPNString);
-        //         break;
-        //     }
-        // }
-
-        // all of vram_info structure
-        byte[] vram_info_bytes = new byte[vram_info.sHeader.usStructureSize];
-        System.arraycopy(bios_bytes, master_data_table.VRAM_Info, 
-                         vram_info_bytes, 0, vram_info.sHeader.usStructureSize);
-
-        // find the 400MHz strap
-        byte[] needle = { (byte)0x40, (byte)0x9C, (byte)0x00 };
-        VRAM_Timings_offset = find_bytes(vram_info_bytes, needle);
-        if(VRAM_Timings_offset == -1)
+        lock.readLock().lock();
+        try
         {
-            System.err.println("failed to find 400MHz strap in BIOS");
-            return null;
+            return history.can_undo();
         }
-        /* 
-         * + master_data_table.VRAM_Info, as find_bytes will return the offset relative to vram_info_bytes
-         * but VRAM_Timings_offset is absolute
-         */
-        VRAM_Timings_offset += master_data_table.VRAM_Info;
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
 
-        ArrayList<ATOM_VRAM_TIMING_ENTRY> vram_timing_entries = new ArrayList<>();
-        // unknown length, 32 should be more than enough
-        for(int i = 0, offset = VRAM_Timings_offset; i < 32; i++, offset += ATOM_VRAM_TIMING_ENTRY.size)
+    public boolean can_redo()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return history.can_redo();
+        }
+        finally
         {
-            byte[] vram_timing_entry_bytes = new byte[ATOM_VRAM_TIMING_ENTRY.size];
-            System.arraycopy(bios_bytes, offset, vram_timing_entry_bytes, 0, ATOM_VRAM_TIMING_ENTRY.size);
+            lock.readLock().unlock();
+        }
+    }
 
-            ATOM_VRAM_TIMING_ENTRY vram_timing_entry = new ATOM_VRAM_TIMING_ENTRY(vram_timing_entry_bytes);
+    /*
+     * brings the bookkeeping in line with the pages revision just swapped into bios
+     * the sum is updated from the swapped bytes themselves, not from the writes of
+     * the revision: an in-place save puts the fixed checksum byte into the image
+     * without an edit, so a page can bring back a different checksum byte
+     * called with the write lock held
+     */
+    private boolean restore(EditHistory.Revision revision)
+    {
+        if(revision == null) return false;
 
-            if(vram_timing_entry.ulClkRange == 0) break;
+        boolean resized = Math.min(Byte.toUnsignedInt(bios.get(2)) * 512, bios.limit()) != checksum_size;
+        for(Map.Entry<Integer, byte[]> e : revision.pages.entrySet())
+        {
+            int start = e.getKey() * EditHistory.PAGE_SIZE;
+            // after the swap the revision holds what bios had before it
+            byte[] before = e.getValue();
+            int end = start + before.length;
 
-            vram_timing_entries.add(vram_timing_entry);
+            if(!resized)
+            {
+                for(int i = start, sum_end = Math.min(end, checksum_size); i < sum_end; i++)
+                    checksum_sum += bios.get(i) - before[i - start];
+            }
+            mark_dirty(start, end, ByteBuffer.wrap(before), 0);
+            invalidate_vram_info(start, end);
         }
 
-        return vram_timing_entries;
+        // the size byte changed the range the checksum covers, so sum it again
+        if(resized)
+            compute_checksum();
+        version++;
+
+        return true;
     }
 
-    public ATOM_VRAM_INFO get_vram_info()
+    /*
+     * adds [start, end) to dirty_ranges
+     * called before [start, end) changes, before holds it as it is now at
+     * before_start, so the bytes that weren't dirty yet can be kept in originals
+     * called with the write lock held
+     */
+    private void mark_dirty(int start, int end, ByteBuffer before, int before_start)
     {
-        // get vram info
-        byte[] vram_info_header_bytes = new byte[ATOM_COMMON_TABLE_HEADER.size];
-        System.arraycopy(bios_bytes, master_data_table.VRAM_Info, 
-                            vram_info_header_bytes, 0, ATOM_COMMON_TABLE_HEADER.size);
-        ATOM_COMMON_TABLE_HEADER vram_info_header = new ATOM_COMMON_TABLE_HEADER(vram_info_header_bytes);
-        byte[] vram_info_full_bytes = new byte[vram_info_header.usStructureSize];
-        System.arraycopy(bios_bytes, master_data_table.VRAM_Info, 
-                            vram_info_full_bytes, 0, vram_info_header.usStructureSize);
-        
-        return new ATOM_VRAM_INFO(vram_info_full_bytes);
+        save_originals(start, end, before, before_start);
+        add_range(dirty_ranges, start, end);
     }
 
     /*
-     * finds timings.ulClkRange and timings.ucIndex in bios_bytes and
-     * overwrites ucLatency in bios_bytes with timings.ucLatency
-     * returns false, if it isn't found
-     * otherwise, returns true
+     * adds [start, end) to ranges, merging it with any range it overlaps or touches
      */
-    public boolean set_timings(ATOM_VRAM_TIMING_ENTRY timings)
+    private static void add_range(TreeMap<Integer, Integer> ranges, int start, int end)
     {
-        ArrayList<ATOM_VRAM_TIMING_ENTRY> curr_timings = get_timings();
-        if(curr_timings == null) return false;
+        Map.Entry<Integer, Integer> e = ranges.floorEntry(start);
+        if(e != null && e.getValue() >= start)
+        {
+            start = e.getKey();
+            end = Math.max(end, e.getValue());
+        }
 
-        boolean found = false;
-        for(ATOM_VRAM_TIMING_ENTRY e : curr_timings)
+        e = ranges.ceilingEntry(start);
+        while(e != null && e.getKey() <= end)
         {
-            if(e.ulClkRange == timings.ulClkRange && e.ucIndex == timings.ucIndex)
-                found = true;
+            end = Math.max(end, e.getValue());
+            ranges.remove(e.getKey());
+            e = ranges.ceilingEntry(start);
         }
-        if(!found)
+
+        ranges.put(start, end);
+    }
+
+    /*
+     * copies the gaps between the dirty ranges in [start, end) from before
+     */
+    private void save_originals(int start, int end, ByteBuffer before, int before_start)
+    {
+        int position = start;
+        Map.Entry<Integer, Integer> e = dirty_ranges.floorEntry(start);
+        if(e != null && e.getValue() > position)
+            position = e.getValue();
+
+        while(position < end)
         {
-            System.err.println(String.format("failed to find timings for index %d %dkHz", 
-                timings.ucIndex, timings.ulClkRange));
-            return false;
+            e = dirty_ranges.ceilingEntry(position);
+            int gap_end = e == null ? end : Math.min(end, e.getKey());
+            if(gap_end > position)
+            {
+                byte[] original = new byte[gap_end - position];
+                before.get(before_start + position - start, original);
+                originals.put(position, original);
+            }
+
+            if(e == null) break;
+            position = Math.max(gap_end, e.getValue());
         }
+    }
 
-        // find the strap
-        byte[] needle = {
-            (byte)(timings.ulClkRange & 0xFF),
-            (byte)((timings.ulClkRange >> 8) & 0xFF),
-            (byte)((timings.ulClkRange >> 16) & 0xFF),
-            timings.ucIndex
-        };
-        int offset = find_bytes(bios_bytes, needle);
-        if(offset == -1)
+    /*
+     * returns a patch from the image this editor was opened with, or last
+     * saved in place, to the current one with the checksum fixed
+     * the base is rebuilt from the original bytes of the dirty ranges and
+     * only the dirty ranges are compared, the rest of the image is only hashed
+     */
+    public RomPatch create_patch()
+    {
+        lock.readLock().lock();
+        try
         {
-            System.err.println(String.format("failed to find the needle for index %d %dkHz", 
-                timings.ucIndex, timings.ulClkRange));
-            return false;
+            byte[] target = to_bytes();
+            byte[] base = new byte[bios.limit()];
+            bios.get(0, base);
+            for(Map.Entry<Integer, byte[]> e : originals.entrySet())
+                System.arraycopy(e.getValue(), 0, base, e.getKey(), e.getValue().length);
+
+            // the fixed checksum byte is only in target
+            TreeMap<Integer, Integer> changed = new TreeMap<>(dirty_ranges);
+            add_range(changed, ATOM_ROM_CHECKSUM_OFFSET, ATOM_ROM_CHECKSUM_OFFSET + 1);
+            int[] ranges = new int[2 * changed.size()];
+            int i = 0;
+            for(Map.Entry<Integer, Integer> e : changed.entrySet())
+            {
+                ranges[i++] = e.getKey();
+                ranges[i++] = e.getValue();
+            }
+
+            return RomPatch.create(base, target, ranges);
         }
-        else
+        finally
         {
-            // overwrite timings
-            System.arraycopy(timings.ucLatency, 0, bios_bytes, offset + needle.length, timings.ucLatency.length);
-            return true;
+            lock.readLock().unlock();
         }
     }
 
     /*
-     * writes bios_bytes to new_bios_file
+     * writes bios to new_bios_file
+     * a mapped bios only writes its dirty ranges, in place if new_bios_file
+     * is the file it was opened from, otherwise on top of a copy of that file
+     * the file gets the fixed checksum, the image and its history don't change
+     * writers wait until the file is written, snapshot().save() doesn't hold them up
      * returns true if succesful, false otherwise
      */
     public boolean save_bios(String new_bios_file)
     {
         Path path = Paths.get(new_bios_file);
+
+        // saving in place resets the dirty ranges, so it can't share the image with readers
+        lock.writeLock().lock();
         try
         {
-            fix_checksum();
+            long start = TimingsEditorMetrics.start();
+            try
+            {
+                if(bios_path == null)
+                    Files.write(path, to_bytes());
+                else save_dirty_ranges(path);
+            }
+            catch(AccessDeniedException e)
+            {
+                System.err.println("failed to write to " + new_bios_file + ", it's read-only");
+                TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.WRITE, start, 0, true);
+                return false;
+            }
+            catch(IOException e)
+            {
+                System.err.println("failed to write to " + new_bios_file);
+                e.printStackTrace();
+                TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.WRITE, start, 0, true);
+                return false;
+            }
 
-            Files.write(path, bios_bytes);
+            TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.WRITE, start, bios.limit(), false);
+            return true;
         }
-        catch(IOException e)
+        finally
         {
-            System.err.println("failed to write to " + new_bios_file);
-            e.printStackTrace();
-            return false;
+            lock.writeLock().unlock();
         }
-
-        return true;
     }
 
-    private void fix_checksum()
+    /*
+     * returns a copy of the whole image with the checksum fixed,
+     * what save_bios() would write to a new file
+     */
+    public byte[] to_bytes()
     {
-        final int atom_rom_checksum_offset = 0x21;
-
-        int size = Byte.toUnsignedInt(bios_bytes[2]) * 512;
-        byte new_checksum = 0;
-        for(int i = 0; i < size; i++)
-            new_checksum += bios_bytes[i];
+        lock.readLock().lock();
+        try
+        {
+            byte[] bytes = new byte[bios.limit()];
+            bios.get(0, bytes);
+            bytes[ATOM_ROM_CHECKSUM_OFFSET] = fixed_checksum();
 
-        if(new_checksum != 0)
-            bios_bytes[atom_rom_checksum_offset] -= (byte)new_checksum;
+            return bytes;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
     }
 
     /*
-     * converts the 2 bytes at offset to an unsigned 16 bit value
-     * bytes are in little endian
-     * returns an int as java doesn't have an unsigned 16 bit value
+     * writes the fixed checksum into the image, as an edit like any other
+     * saving and exporting don't need this, they fix the checksum in what they write
+     * package-private so TimingsEditorBenchmark can time it on its own
      */
-    private int bytes_to_uint16(byte[] bytes, int offset)
+    void fix_checksum()
     {
-        return Byte.toUnsignedInt(bytes[offset + 1]) << 8 | Byte.toUnsignedInt(bytes[offset]);
+        long start = TimingsEditorMetrics.start();
+
+        // no write can change the sum between reading it and fixing it
+        lock.writeLock().lock();
+        try
+        {
+            byte fixed = fixed_checksum();
+            if(fixed != bios.get(ATOM_ROM_CHECKSUM_OFFSET))
+                write_byte(ATOM_ROM_CHECKSUM_OFFSET, fixed);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+            TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.CHECKSUM, start);
+        }
     }
 
-    private long bytes_to_uint32(byte[] bytes, int offset)
+    /*
+     * the checksum byte that makes the image sum to 0
+     * it only ever goes into copies of the image, so saving isn't an edit
+     * and undo/redo work the same before and after a save
+     * called with the lock held, so the sum can't change
+     */
+    private byte fixed_checksum()
     {
-        return Byte.toUnsignedLong(bytes[offset + 3]) << 24 |
-               Byte.toUnsignedLong(bytes[offset + 2]) << 16 |
-               Byte.toUnsignedLong(bytes[offset + 1]) << 8 |
-               Byte.toUnsignedLong(bytes[offset]);
+        return (byte)(bios.get(ATOM_ROM_CHECKSUM_OFFSET) - (byte)checksum_sum);
     }
 
     /*
-     * finds the first occurrence of needle in haystack
-     * returns the index to the start of needle in haystack
-     * returns -1 if not found
-     * maybe replace with KMP algorithm?
+     * sums the whole image once, write_bytes() keeps the sum up to date after that
      */
-    private int find_bytes(byte[] haystack, byte[] needle)
+    private void compute_checksum()
     {
-        if(haystack == null || needle == null)
-            return -1;
+        checksum_size = Math.min(Byte.toUnsignedInt(bios.get(2)) * 512, bios.limit());
+        int sum = 0;
+        for(int i = 0; i < checksum_size; i++)
+            sum += bios.get(i);
 
-        if(haystack.length == 0 || needle.length == 0)
-            return -1;
+        checksum_sum = sum;
+    }
 
-        if(haystack.length < needle.length)
-            return -1;
+    private void save_dirty_ranges(Path path) throws IOException
+    {
+        boolean in_place = Files.exists(path) && Files.isSameFile(path, bios_path);
+        if(!in_place)
+            Files.copy(bios_path, path, StandardCopyOption.REPLACE_EXISTING);
+
+        // read before the file changes, a page of the mapping that was never written reads through to it
+        byte checksum = bios.get(ATOM_ROM_CHECKSUM_OFFSET), fixed = fixed_checksum();
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+        {
+            write_dirty_ranges(channel, 0);
+            channel.force(false);
+        }
+
+        // the file we were opened from now matches the mapping, once the mapping has
+        // the fixed checksum as well, which isn't an edit, restore() copes with undoing past it
+        if(in_place)
+        {
+            bios.put(ATOM_ROM_CHECKSUM_OFFSET, fixed);
+            if(ATOM_ROM_CHECKSUM_OFFSET < checksum_size)
+                checksum_sum += fixed - checksum;
 
-        for(int i = 0; i < haystack.length - needle.length; i++)
+            dirty_ranges.clear();
+            originals.clear();
+        }
+    }
+
+    /*
+     * writes every dirty range of bios and the fixed checksum to channel at
+     * position + its offset, so a BIOS read out of a bigger file can be patched back into it
+     */
+    public void write_dirty_ranges(FileChannel channel, long position) throws IOException
+    {
+        lock.readLock().lock();
+        try
         {
-            boolean found = true;
-            for(int j = 0; j < needle.length; j++)
+            for(Map.Entry<Integer, Integer> e : dirty_ranges.entrySet())
             {
-                if(haystack[i + j] != needle[j])
-                {
-                    found = false; break;
-                }
+                ByteBuffer range = bios.slice(e.getKey(), e.getValue() - e.getKey());
+                for(long p = position + e.getKey(); range.hasRemaining(); )
+                    p += channel.write(range, p);
             }
 
-            if(found) return i;
+            ByteBuffer checksum = ByteBuffer.wrap(new byte[] { fixed_checksum() });
+            while(checksum.hasRemaining())
+                channel.write(checksum, position + ATOM_ROM_CHECKSUM_OFFSET);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * reads little endian unsigned values at the absolute offset in bytes
+     * returns an int/long as java doesn't have unsigned types
+     */
+    private static int uint16(ByteBuffer bytes, int offset)
+    {
+        return Short.toUnsignedInt(bytes.getShort(offset));
+    }
+
+    private static int uint24(ByteBuffer bytes, int offset)
+    {
+        return Byte.toUnsignedInt(bytes.get(offset + 2)) << 16 | uint16(bytes, offset);
+    }
+
+    private static long uint32(ByteBuffer bytes, int offset)
+    {
+        return Integer.toUnsignedLong(bytes.getInt(offset));
+    }
+
+    private static String read_string(ByteBuffer bytes, int offset, int length) throws IllegalArgumentException
+    {
+        check_bounds("string", bytes, offset, length);
+        byte[] str = new byte[length];
+        bytes.get(offset, str);
+
+        return new String(str);
+    }
+
+    /*
+     * throws if the structure at offset doesn't fit in bytes
+     */
+    private static void check_bounds(String name, ByteBuffer bytes, int offset, int size) 
+        throws IllegalArgumentException
+    {
+        if(offset < 0 || offset + size > bytes.limit())
+        {
+            throw new IllegalArgumentException(
+                String.format(
+                    "%s: expected %d bytes at 0x%X, got %d bytes", 
+                    name, size, offset, Math.max(0, bytes.limit() - offset)
+                )
+            );
+        }
+    }
+
+    /*
+     * finds the first occurrence of needle in haystack between from and to
+     * returns the absolute index to the start of needle in haystack
+     * returns -1 if not found
+     */
+    private int find_bytes(ByteBuffer haystack, int from, int to, byte[] needle)
+    {
+        return ByteSearch.find(haystack, from, to, needle);
+    }
+
+    /*
+     * finds the (ulClkRange, ucIndex) needle of every strap in a single pass
+     * over the whole BIOS, instead of one full scan per strap
+     * returns the absolute offset of each strap, -1 for the ones that weren't found
+     */
+    public int[] find_straps(byte[] indices, int[] clk_ranges)
+    {
+        if(indices.length != clk_ranges.length)
+            throw new IllegalArgumentException("find_straps: expected as many indices as clock ranges");
+
+        byte[][] needles = new byte[indices.length][];
+        for(int i = 0; i < indices.length; i++)
+        {
+            needles[i] = new byte[] {
+                (byte)(clk_ranges[i] & 0xFF),
+                (byte)((clk_ranges[i] >> 8) & 0xFF),
+                (byte)((clk_ranges[i] >> 16) & 0xFF),
+                indices[i]
+            };
         }
 
-        return -1;
+        lock.readLock().lock();
+        try
+        {
+            return new ByteSearch.Multi(needles).find_first(bios, 0, bios.limit());
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
     }
 
     class ATOM_ROM_HEADER
     {
         public static final int size = 36, ATOM_BIOS_SIGNATURE = 0x4D4F5441;
+        public final int offset;
 
         public ATOM_COMMON_TABLE_HEADER sHeader;
         public int ulFirmwareSignature;             // 4 bytes
@@ -291,44 +1363,38 @@ public class TimingsEditor
         public short ucExtendedFunctionCode;
         public short ucReserved;
 
-        public ATOM_ROM_HEADER(byte[] bytes) throws IllegalArgumentException
+        public ATOM_ROM_HEADER(ByteBuffer bytes, int offset) throws IllegalArgumentException
         {
-            if(bytes.length != size)
-            {
-                throw new IllegalArgumentException(
-                    String.format(
-                        "ATOM_ROM_HEADER: expected %d bytes, got %d bytes", 
-                        size, bytes.length
-                    )
-                );
-            }
+            this.offset = offset;
+            check_bounds("ATOM_ROM_HEADER", bytes, offset, size);
 
-            sHeader = new ATOM_COMMON_TABLE_HEADER(Arrays.copyOf(bytes, ATOM_COMMON_TABLE_HEADER.size));
+            sHeader = new ATOM_COMMON_TABLE_HEADER(bytes, offset);
             int i = ATOM_COMMON_TABLE_HEADER.size;
-            ulFirmwareSignature = (int)bytes_to_uint32(bytes, i); i += 4;
+            ulFirmwareSignature = (int)uint32(bytes, offset + i); i += 4;
             if(ulFirmwareSignature != ATOM_BIOS_SIGNATURE)
                 throw new IllegalArgumentException("invalid BIOS");
-            usBIOSRuntimeSegmentAddress = bytes_to_uint16(bytes, i); i += 2;
-            usProtectedModeInfoOffset = bytes_to_uint16(bytes, i); i += 2;
-            usConfigFilenameOffset = bytes_to_uint16(bytes, i); i += 2;
-            usCRCBlockOffset = bytes_to_uint16(bytes, i); i += 2;
-            usBIOSBootupMessageOffset = bytes_to_uint16(bytes, i); i += 2;
-            usInt10Offset = bytes_to_uint16(bytes, i); i += 2;
-            usPCIBusDevInitiCode = bytes_to_uint16(bytes, i); i += 2;
-            usIOBaseAddress = bytes_to_uint16(bytes, i); i += 2;
-            usSubsystemVendorID = bytes_to_uint16(bytes, i); i += 2;
-            usSubsystemID = bytes_to_uint16(bytes, i); i += 2;
-            usPCIInfoOffset = bytes_to_uint16(bytes, i); i += 2;
-            usMasterCommandTableOffset = bytes_to_uint16(bytes, i); i += 2;
-            usMasterDataTableOffset = bytes_to_uint16(bytes, i); i += 2;
-            ucExtendedFunctionCode = bytes[i++];
-            ucReserved = bytes[i++];
+            usBIOSRuntimeSegmentAddress = uint16(bytes, offset + i); i += 2;
+            usProtectedModeInfoOffset = uint16(bytes, offset + i); i += 2;
+            usConfigFilenameOffset = uint16(bytes, offset + i); i += 2;
+            usCRCBlockOffset = uint16(bytes, offset + i); i += 2;
+            usBIOSBootupMessageOffset = uint16(bytes, offset + i); i += 2;
+            usInt10Offset = uint16(bytes, offset + i); i += 2;
+            usPCIBusDevInitiCode = uint16(bytes, offset + i); i += 2;
+            usIOBaseAddress = uint16(bytes, offset + i); i += 2;
+            usSubsystemVendorID = uint16(bytes, offset + i); i += 2;
+            usSubsystemID = uint16(bytes, offset + i); i += 2;
+            usPCIInfoOffset = uint16(bytes, offset + i); i += 2;
+            usMasterCommandTableOffset = uint16(bytes, offset + i); i += 2;
+            usMasterDataTableOffset = uint16(bytes, offset + i); i += 2;
+            ucExtendedFunctionCode = bytes.get(offset + i++);
+            ucReserved = bytes.get(offset + i++);
         }
     }
 
     class ATOM_MASTER_DATA_TABLE
     {
         public static final int size = 74;
+        public final int offset;
 
         public ATOM_COMMON_TABLE_HEADER sHeader;
         // vvv 2 bytes vvv
@@ -368,81 +1434,68 @@ public class TimingsEditor
         public int PowerSourceInfo;
         public int ServiceInfo;
 
-        public ATOM_MASTER_DATA_TABLE(byte[] bytes)
+        public ATOM_MASTER_DATA_TABLE(ByteBuffer bytes, int offset)
         {
-            if(bytes.length != size) 
-            {
-                throw new IllegalArgumentException(
-                    String.format(
-                        "ATOM_MASTER_DATA_TABLE: expected %d bytes, got %d bytes", 
-                        size, bytes.length
-                    )
-                );
-            }
+            this.offset = offset;
+            check_bounds("ATOM_MASTER_DATA_TABLE", bytes, offset, size);
 
-            sHeader = new ATOM_COMMON_TABLE_HEADER(Arrays.copyOf(bytes, ATOM_COMMON_TABLE_HEADER.size));
+            sHeader = new ATOM_COMMON_TABLE_HEADER(bytes, offset);
             int i = ATOM_COMMON_TABLE_HEADER.size;
-            UtilityPipeLine = bytes_to_uint16(bytes, i); i += 2;
-            MultimediaCapabilityInfo = bytes_to_uint16(bytes, i); i += 2;
-            MultimedaConfigInfo = bytes_to_uint16(bytes, i); i += 2;
-            StandardVESATiming = bytes_to_uint16(bytes, i); i += 2;
-            FirmwareInfo = bytes_to_uint16(bytes, i); i += 2;
-            PaletteData = bytes_to_uint16(bytes, i); i += 2;
-            LCD_Info = bytes_to_uint16(bytes, i); i += 2;
-            DIGTransmitterInfo = bytes_to_uint16(bytes, i); i += 2;
-            AnalogTV_Info = bytes_to_uint16(bytes, i); i += 2;
-            SupportedDevicesInfo = bytes_to_uint16(bytes, i); i += 2;
-            GPIO_I2C_Info = bytes_to_uint16(bytes, i); i += 2;
-            VRAMUsageByFirmware = bytes_to_uint16(bytes, i); i += 2;
-            GPIO_Pin_LUT = bytes_to_uint16(bytes, i); i += 2;
-            VESAToInternalModeLUT = bytes_to_uint16(bytes, i); i += 2;
-            ComponentVideoInfo = bytes_to_uint16(bytes, i); i += 2;
-            PowerPlayInfo = bytes_to_uint16(bytes, i); i += 2;
-            GPUVirtualizationInfo = bytes_to_uint16(bytes, i); i += 2;
-            SaveRestoreInfo = bytes_to_uint16(bytes, i); i += 2;
-            PPLL_SS_Info = bytes_to_uint16(bytes, i); i += 2;
-            OEMInfo = bytes_to_uint16(bytes, i); i += 2;
-            XTMDS_Info = bytes_to_uint16(bytes, i); i += 2;
-            XTMDS_Info = bytes_to_uint16(bytes, i); i += 2;
-            MclkSS_Info = bytes_to_uint16(bytes, i); i += 2;
-            Object_Header = bytes_to_uint16(bytes, i); i += 2;
-            IndirectIOAccess = bytes_to_uint16(bytes, i); i += 2;
-            MC_InitParameter = bytes_to_uint16(bytes, i); i += 2;
-            ASIC_VDDC_Info = bytes_to_uint16(bytes, i); i += 2;
-            TV_VideoMode = bytes_to_uint16(bytes, i); i += 2;
-            VRAM_Info = bytes_to_uint16(bytes, i); i += 2;
-            MemoryTrainingInfo = bytes_to_uint16(bytes, i); i += 2;
-            IntegratedSystemInfo = bytes_to_uint16(bytes, i); i += 2;
-            ASIC_ProfilingInfo = bytes_to_uint16(bytes, i); i += 2;
-            VoltageObjectInfo = bytes_to_uint16(bytes, i); i += 2;
-            PowerSourceInfo = bytes_to_uint16(bytes, i); i += 2;
-            ServiceInfo = bytes_to_uint16(bytes, i); i += 2;
+            UtilityPipeLine = uint16(bytes, offset + i); i += 2;
+            MultimediaCapabilityInfo = uint16(bytes, offset + i); i += 2;
+            MultimedaConfigInfo = uint16(bytes, offset + i); i += 2;
+            StandardVESATiming = uint16(bytes, offset + i); i += 2;
+            FirmwareInfo = uint16(bytes, offset + i); i += 2;
+            PaletteData = uint16(bytes, offset + i); i += 2;
+            LCD_Info = uint16(bytes, offset + i); i += 2;
+            DIGTransmitterInfo = uint16(bytes, offset + i); i += 2;
+            AnalogTV_Info = uint16(bytes, offset + i); i += 2;
+            SupportedDevicesInfo = uint16(bytes, offset + i); i += 2;
+            GPIO_I2C_Info = uint16(bytes, offset + i); i += 2;
+            VRAMUsageByFirmware = uint16(bytes, offset + i); i += 2;
+            GPIO_Pin_LUT = uint16(bytes, offset + i); i += 2;
+            VESAToInternalModeLUT = uint16(bytes, offset + i); i += 2;
+            ComponentVideoInfo = uint16(bytes, offset + i); i += 2;
+            PowerPlayInfo = uint16(bytes, offset + i); i += 2;
+            GPUVirtualizationInfo = uint16(bytes, offset + i); i += 2;
+            SaveRestoreInfo = uint16(bytes, offset + i); i += 2;
+            PPLL_SS_Info = uint16(bytes, offset + i); i += 2;
+            OEMInfo = uint16(bytes, offset + i); i += 2;
+            XTMDS_Info = uint16(bytes, offset + i); i += 2;
+            MclkSS_Info = uint16(bytes, offset + i); i += 2;
+            Object_Header = uint16(bytes, offset + i); i += 2;
+            IndirectIOAccess = uint16(bytes, offset + i); i += 2;
+            MC_InitParameter = uint16(bytes, offset + i); i += 2;
+            ASIC_VDDC_Info = uint16(bytes, offset + i); i += 2;
+            ASIC_InternalSS_Info = uint16(bytes, offset + i); i += 2;
+            TV_VideoMode = uint16(bytes, offset + i); i += 2;
+            VRAM_Info = uint16(bytes, offset + i); i += 2;
+            MemoryTrainingInfo = uint16(bytes, offset + i); i += 2;
+            IntegratedSystemInfo = uint16(bytes, offset + i); i += 2;
+            ASIC_ProfilingInfo = uint16(bytes, offset + i); i += 2;
+            VoltageObjectInfo = uint16(bytes, offset + i); i += 2;
+            PowerSourceInfo = uint16(bytes, offset + i); i += 2;
+            ServiceInfo = uint16(bytes, offset + i); i += 2;
         }
     }
 
     class ATOM_COMMON_TABLE_HEADER
     {
         public static final int size = 4;
+        public final int offset;
 
         public int usStructureSize;     // 2 bytes
         public byte ucTableFormatRevision;
         public byte ucTableContentRevision;
 
-        public ATOM_COMMON_TABLE_HEADER(byte[] bytes) throws IllegalArgumentException
+        public ATOM_COMMON_TABLE_HEADER(ByteBuffer bytes, int offset) throws IllegalArgumentException
         {
-            if(bytes.length != size)
-            {
-                throw new IllegalArgumentException(
-                    String.format(
-                        "ATOM_COMMON_TABLE_HEADER: expected %d bytes, got %d bytes", 
-                        size, bytes.length
-                    )
-                );
-            }
+            this.offset = offset;
+            check_bounds("ATOM_COMMON_TABLE_HEADER", bytes, offset, size);
 
-            usStructureSize = bytes_to_uint16(bytes, 0);
-            ucTableFormatRevision = bytes[2];
-            ucTableContentRevision = bytes[3];
+            usStructureSize = uint16(bytes, offset);
+            ucTableFormatRevision = bytes.get(offset + 2);
+            ucTableContentRevision = bytes.get(offset + 3);
         }
     }
 
@@ -450,6 +1503,7 @@ public class TimingsEditor
     class ATOM_VRAM_INFO
     {
         public final int size;
+        public final int offset;
 
         public ATOM_COMMON_TABLE_HEADER sHeader;
         // vvv 2 bytes vvv -> java doesn't have unsigned :/
@@ -466,35 +1520,35 @@ public class TimingsEditor
         public byte ucMcPhyTileNum;
         public ATOM_VRAM_MODULE[] sModules;
 
-        public ATOM_VRAM_INFO(byte[] bytes) throws IllegalArgumentException
+        public ATOM_VRAM_INFO(ByteBuffer bytes, int offset) throws IllegalArgumentException
         {
-            sHeader = new ATOM_COMMON_TABLE_HEADER(Arrays.copyOf(bytes, ATOM_COMMON_TABLE_HEADER.size));
+            this.offset = offset;
+            sHeader = new ATOM_COMMON_TABLE_HEADER(bytes, offset);
+            check_bounds("ATOM_VRAM_INFO", bytes, offset, ATOM_COMMON_TABLE_HEADER.size + 16);
             int i = ATOM_COMMON_TABLE_HEADER.size;
-            usMemAdjustTblOffset = bytes_to_uint16(bytes, i); i += 2;
-            usMemClkPatchTblOffset = bytes_to_uint16(bytes, i); i += 2;
-            usMcAdjustPerTileTblOffset = bytes_to_uint16(bytes, i); i += 2;
-            usMcPhyInitTableOffset = bytes_to_uint16(bytes, i); i += 2;
-            usDramDataRemapTblOffset = bytes_to_uint16(bytes, i); i += 2;
-            usReserved1 = bytes_to_uint16(bytes, i); i += 2;
-            ucNumOfVRAMModule = bytes[i++];
-            ucMemoryClkPatchTblVer = bytes[i++];
-            ucVramModuleVer = bytes[i++];
-            ucMcPhyTileNum = bytes[i++];
-            sModules = new ATOM_VRAM_MODULE[ucNumOfVRAMModule];
+            usMemAdjustTblOffset = uint16(bytes, offset + i); i += 2;
+            usMemClkPatchTblOffset = uint16(bytes, offset + i); i += 2;
+            usMcAdjustPerTileTblOffset = uint16(bytes, offset + i); i += 2;
+            usMcPhyInitTableOffset = uint16(bytes, offset + i); i += 2;
+            usDramDataRemapTblOffset = uint16(bytes, offset + i); i += 2;
+            usReserved1 = uint16(bytes, offset + i); i += 2;
+            ucNumOfVRAMModule = bytes.get(offset + i++);
+            ucMemoryClkPatchTblVer = bytes.get(offset + i++);
+            ucVramModuleVer = bytes.get(offset + i++);
+            ucMcPhyTileNum = bytes.get(offset + i++);
+            sModules = new ATOM_VRAM_MODULE[Byte.toUnsignedInt(ucNumOfVRAMModule)];
             int total = 0;
-            for(int j = 0; j < ucNumOfVRAMModule; j++)
+            for(int j = 0; j < sModules.length; j++)
             {
-                ATOM_VRAM_MODULE_HEADER header = new ATOM_VRAM_MODULE_HEADER(
-                    Arrays.copyOfRange(bytes, i, i + 6)
-                );
+                ATOM_VRAM_MODULE_HEADER header = new ATOM_VRAM_MODULE_HEADER(bytes, offset + i);
 
                 switch(ucVramModuleVer)
                 {
                 case 7:
-                    sModules[j] = new ATOM_VRAM_MODULE_V7(Arrays.copyOfRange(bytes, i, i + header.usModuleSize));
+                    sModules[j] = new ATOM_VRAM_MODULE_V7(bytes, offset + i);
                     break;
                 case 8:
-                    sModules[j] = new ATOM_VRAM_MODULE_V8(Arrays.copyOfRange(bytes, i, i + header.usModuleSize));
+                    sModules[j] = new ATOM_VRAM_MODULE_V8(bytes, offset + i);
                     break;
                 default:
                     throw new IllegalArgumentException("ATOM_VRAM_INFO: unknown module version: " + ucVramModuleVer);
@@ -511,25 +1565,19 @@ public class TimingsEditor
     class ATOM_VRAM_MODULE_HEADER
     {
         public static final int size = 6;
+        public final int offset;
 
         public long ulChannelMapCfg;
         public int usModuleSize;
 
-        public ATOM_VRAM_MODULE_HEADER(byte[] bytes) throws IllegalArgumentException
+        public ATOM_VRAM_MODULE_HEADER(ByteBuffer bytes, int offset) throws IllegalArgumentException
         {
-            if(bytes.length != size)
-            {
-                throw new IllegalArgumentException(
-                    String.format(
-                        "ATOM_VRAM_MODULE_HEADER: expected %d bytes, got %d bytes", 
-                        size, bytes.length
-                    )
-                );
-            }
+            this.offset = offset;
+            check_bounds("ATOM_VRAM_MODULE_HEADER", bytes, offset, size);
 
             int i = 0;
-            ulChannelMapCfg = bytes_to_uint32(bytes, i); i += 4;
-            usModuleSize = bytes_to_uint16(bytes, i); i += 2;
+            ulChannelMapCfg = uint32(bytes, offset + i); i += 4;
+            usModuleSize = uint16(bytes, offset + i); i += 2;
         }
     }
 
@@ -540,8 +1588,11 @@ public class TimingsEditor
 
     class ATOM_VRAM_MODULE_V7 extends ATOM_VRAM_MODULE
     {
+        // everything before strMemPNString
+        public static final int FIXED_SIZE = 32;
         // size is sHeader.usModuleSize
         public final int size;
+        public final int offset;
 
         ATOM_VRAM_MODULE_HEADER sHeader;
         public int usPrivateReserved;
@@ -567,43 +1618,48 @@ public class TimingsEditor
         public byte ucCDR_Bandwidth;
         public String strMemPNString;  // up to 20 bytes
 
-        public ATOM_VRAM_MODULE_V7(byte[] bytes)
+        public ATOM_VRAM_MODULE_V7(ByteBuffer bytes, int offset)
         {
+            this.offset = offset;
             int i = 0;
-            sHeader = new ATOM_VRAM_MODULE_HEADER(Arrays.copyOf(bytes, ATOM_VRAM_MODULE_HEADER.size)); 
+            sHeader = new ATOM_VRAM_MODULE_HEADER(bytes, offset); 
             size = sHeader.usModuleSize;
+            check_bounds("ATOM_VRAM_MODULE_V7", bytes, offset, Math.max(FIXED_SIZE, size));
             i += ATOM_VRAM_MODULE_HEADER.size;
-            usPrivateReserved = bytes_to_uint16(bytes, i); i += 2;
-            usEnableChannels = bytes_to_uint16(bytes, i); i += 2;
-            ucExtMemoryID = bytes[i++];
-            ucMemoryType = bytes[i++];
-            ucChannelNum = bytes[i++];
-            ucChannelWidth = bytes[i++];
-            ucDensity = bytes[i++];
-            ucReserve = bytes[i++];
-            ucMisc = bytes[i++];
-            ucVREFI = bytes[i++];
-            ucNPL_RT = bytes[i++];
-            ucPreamble = bytes[i++];
-            ucMemorySize = bytes[i++];
-            usSEQSettingOffset = bytes_to_uint16(bytes, i); i += 2;
-            ucReserved = bytes[i++];
-            usEMRS2Value = bytes_to_uint16(bytes, i); i += 2;
-            usEMRS3Value = bytes_to_uint16(bytes, i); i += 2;
-            ucMemoryVenderID = bytes[i++];
-            ucRefreshRateFactor = bytes[i++];
-            ucFIFODepth = bytes[i++];
-            ucCDR_Bandwidth = bytes[i++];
+            usPrivateReserved = uint16(bytes, offset + i); i += 2;
+            usEnableChannels = uint16(bytes, offset + i); i += 2;
+            ucExtMemoryID = bytes.get(offset + i++);
+            ucMemoryType = bytes.get(offset + i++);
+            ucChannelNum = bytes.get(offset + i++);
+            ucChannelWidth = bytes.get(offset + i++);
+            ucDensity = bytes.get(offset + i++);
+            ucReserve = bytes.get(offset + i++);
+            ucMisc = bytes.get(offset + i++);
+            ucVREFI = bytes.get(offset + i++);
+            ucNPL_RT = bytes.get(offset + i++);
+            ucPreamble = bytes.get(offset + i++);
+            ucMemorySize = bytes.get(offset + i++);
+            usSEQSettingOffset = uint16(bytes, offset + i); i += 2;
+            ucReserved = bytes.get(offset + i++);
+            usEMRS2Value = uint16(bytes, offset + i); i += 2;
+            usEMRS3Value = uint16(bytes, offset + i); i += 2;
+            ucMemoryVenderID = bytes.get(offset + i++);
+            ucRefreshRateFactor = bytes.get(offset + i++);
+            ucFIFODepth = bytes.get(offset + i++);
+            ucCDR_Bandwidth = bytes.get(offset + i++);
             // read VRAM IC if there is one
             int delta = sHeader.usModuleSize - i;
-            if(delta > 1) strMemPNString = new String(bytes, i, delta);
+            if(delta > 1) strMemPNString = read_string(bytes, offset + i, delta);
         }
     }
 
     class ATOM_VRAM_MODULE_V8 extends ATOM_VRAM_MODULE
     {
+        // everything before strMemPNString
+        public static final int FIXED_SIZE = 44;
         // size is sHeader.usModuleSize
         public final int size;
+        public final int offset;
 
         public ATOM_VRAM_MODULE_HEADER sHeader;
         public int usMcRamCfg;
@@ -631,38 +1687,40 @@ public class TimingsEditor
         public long ulReserved;
         public String strMemPNString;   // 12 bytes
 
-        public ATOM_VRAM_MODULE_V8(byte[] bytes) throws IllegalArgumentException
+        public ATOM_VRAM_MODULE_V8(ByteBuffer bytes, int offset) throws IllegalArgumentException
         {
+            this.offset = offset;
             int i = 0;
-            sHeader = new ATOM_VRAM_MODULE_HEADER(Arrays.copyOf(bytes, ATOM_VRAM_MODULE_HEADER.size)); 
+            sHeader = new ATOM_VRAM_MODULE_HEADER(bytes, offset); 
             size = sHeader.usModuleSize;
+            check_bounds("ATOM_VRAM_MODULE_V8", bytes, offset, Math.max(FIXED_SIZE, size));
             i += ATOM_VRAM_MODULE_HEADER.size;
-            usMcRamCfg = bytes_to_uint16(bytes, i); i += 2;
-            usEnableChannels = bytes_to_uint16(bytes, i); i += 2;
-            ucExtMemoryID = bytes[i++];
-            ucMemoryType = bytes[i++];
-            ucChannelNum = bytes[i++];
-            ucChannelWidth = bytes[i++];
-            ucDensity = bytes[i++];
-            ucBankCol = bytes[i++];
-            ucMisc = bytes[i++];
-            ucVREFI = bytes[i++];
-            usReserved = bytes_to_uint16(bytes, i); i += 2;
-            usMemorySize = bytes_to_uint16(bytes, i); i += 2;
-            ucMcTunningSetId = bytes[i++];
-            ucRowNum = bytes[i++];
-            usEMRS2Value = bytes_to_uint16(bytes, i); i += 2;
-            usEMRS3Value = bytes_to_uint16(bytes, i); i += 2;
-            ucMemoryVendorID = bytes[i++];
-            ucRefreshRateFactor = bytes[i++];
-            ucFIFODepth = bytes[i++];
-            ucCDR_Bandwidth = bytes[i++];
-            ulChannelMapCfg1 = bytes_to_uint32(bytes, i); i += 4;
-            ulBankMapCfg = bytes_to_uint32(bytes, i); i += 4;
-            ulReserved = bytes_to_uint32(bytes, i); i += 4;
+            usMcRamCfg = uint16(bytes, offset + i); i += 2;
+            usEnableChannels = uint16(bytes, offset + i); i += 2;
+            ucExtMemoryID = bytes.get(offset + i++);
+            ucMemoryType = bytes.get(offset + i++);
+            ucChannelNum = bytes.get(offset + i++);
+            ucChannelWidth = bytes.get(offset + i++);
+            ucDensity = bytes.get(offset + i++);
+            ucBankCol = bytes.get(offset + i++);
+            ucMisc = bytes.get(offset + i++);
+            ucVREFI = bytes.get(offset + i++);
+            usReserved = uint16(bytes, offset + i); i += 2;
+            usMemorySize = uint16(bytes, offset + i); i += 2;
+            ucMcTunningSetId = bytes.get(offset + i++);
+            ucRowNum = bytes.get(offset + i++);
+            usEMRS2Value = uint16(bytes, offset + i); i += 2;
+            usEMRS3Value = uint16(bytes, offset + i); i += 2;
+            ucMemoryVendorID = bytes.get(offset + i++);
+            ucRefreshRateFactor = bytes.get(offset + i++);
+            ucFIFODepth = bytes.get(offset + i++);
+            ucCDR_Bandwidth = bytes.get(offset + i++);
+            ulChannelMapCfg1 = uint32(bytes, offset + i); i += 4;
+            ulBankMapCfg = uint32(bytes, offset + i); i += 4;
+            ulReserved = uint32(bytes, offset + i); i += 4;
             // read VRAM IC if there is one
             int delta = sHeader.usModuleSize - i;
-            if(delta > 1) strMemPNString = new String(bytes, i, delta);
+            if(delta > 1) strMemPNString = read_string(bytes, offset + i, delta);
         }
     }
 
@@ -670,6 +1728,7 @@ public class TimingsEditor
     class ATOM_VRAM_ENTRY
     {
         public static final int size = 64;
+        public final int offset;
 
         public long ulChannelMapCfg;    // uint32
         public int usModuleSize;        // uint16
@@ -698,78 +1757,80 @@ public class TimingsEditor
         public long ulReserved;         // uint32
         public final byte[] strMemPNString = new byte[20];   // 20 bytes
 
-        public ATOM_VRAM_ENTRY(byte[] bytes) throws IllegalArgumentException
+        public ATOM_VRAM_ENTRY(ByteBuffer bytes, int offset) throws IllegalArgumentException
         {
-            if(bytes.length != size)
-            {
-                throw new IllegalArgumentException(
-                    String.format(
-                        "ATOM_VRAM_ENTRY: expected %d bytes, got %d bytes", 
-                        size, bytes.length
-                    )
-                );
-            }
+            this.offset = offset;
+            check_bounds("ATOM_VRAM_ENTRY", bytes, offset, size);
 
             int i = 0;
-            ulChannelMapCfg = bytes_to_uint32(bytes, i); i += 4;
-            usModuleSize = bytes_to_uint16(bytes, i); i += 2;
-            usMcRamCfg = bytes_to_uint16(bytes, i); i += 2;
-            usEnableChannels = bytes_to_uint16(bytes, i); i += 2;
-            ucExtMemoryID = bytes[i++];
-            ucMemoryType = bytes[i++];
-            ucChannelNum = bytes[i++];
-            ucChannelWidth = bytes[i++];
-            ucDensity = bytes[i++];
-            ucBankCol = bytes[i++];
-            ucMisc = bytes[i++];
-            ucVREFI = bytes[i++];
-            usReserved = bytes_to_uint16(bytes, i); i += 2;
-            usMemorySize = bytes_to_uint16(bytes, i); i += 2;
-            ucMcTunningSetId = bytes[i++];
-            ucRowNum = bytes[i++];
-            usEMRS2Value = bytes_to_uint16(bytes, i); i += 2;
-            usEMRS3Value = bytes_to_uint16(bytes, i); i += 2;
-            ucMemoryVenderID = bytes[i++];
-            ucRefreshRateFactor = bytes[i++];
-            ucFIFODepth = bytes[i++];
-            ucCDR_Bandwidth = bytes[i++];
-            ulChannelMapCfg1 = bytes_to_uint32(bytes, i); i += 4;
-            ulBankMapCfg = bytes_to_uint32(bytes, i); i += 4;
-            ulReserved = bytes_to_uint32(bytes, i); i += 4;
-            System.arraycopy(bytes, i, strMemPNString, 0, 20);
+            ulChannelMapCfg = uint32(bytes, offset + i); i += 4;
+            usModuleSize = uint16(bytes, offset + i); i += 2;
+            usMcRamCfg = uint16(bytes, offset + i); i += 2;
+            usEnableChannels = uint16(bytes, offset + i); i += 2;
+            ucExtMemoryID = bytes.get(offset + i++);
+            ucMemoryType = bytes.get(offset + i++);
+            ucChannelNum = bytes.get(offset + i++);
+            ucChannelWidth = bytes.get(offset + i++);
+            ucDensity = bytes.get(offset + i++);
+            ucBankCol = bytes.get(offset + i++);
+            ucMisc = bytes.get(offset + i++);
+            ucVREFI = bytes.get(offset + i++);
+            usReserved = uint16(bytes, offset + i); i += 2;
+            usMemorySize = uint16(bytes, offset + i); i += 2;
+            ucMcTunningSetId = bytes.get(offset + i++);
+            ucRowNum = bytes.get(offset + i++);
+            usEMRS2Value = uint16(bytes, offset + i); i += 2;
+            usEMRS3Value = uint16(bytes, offset + i); i += 2;
+            ucMemoryVenderID = bytes.get(offset + i++);
+            ucRefreshRateFactor = bytes.get(offset + i++);
+            ucFIFODepth = bytes.get(offset + i++);
+            ucCDR_Bandwidth = bytes.get(offset + i++);
+            ulChannelMapCfg1 = uint32(bytes, offset + i); i += 4;
+            ulBankMapCfg = uint32(bytes, offset + i); i += 4;
+            ulReserved = uint32(bytes, offset + i); i += 4;
+            bytes.get(offset + i, strMemPNString);
         }
     }
 
     class ATOM_VRAM_TIMING_ENTRY
     {
         public static final int size = 0x34;
+        public final int offset;
 
         public int ulClkRange;  // unsigned int, 3 bytes, in 10kHz
         public byte ucIndex;
         public final byte[] ucLatency = new byte[0x30];
 
-        public ATOM_VRAM_TIMING_ENTRY(byte[] bytes) throws IllegalArgumentException
+        public ATOM_VRAM_TIMING_ENTRY(ByteBuffer bytes, int offset) throws IllegalArgumentException
         {
-            if(bytes.length != size)
-            {
-                throw new IllegalArgumentException(
-                    String.format(
-                        "ATOM_VRAM_TIMING_ENTRY: expected %d bytes, got %d bytes", 
-                        size, bytes.length
-                    )
-                );
-            }
+            this.offset = offset;
+            check_bounds("ATOM_VRAM_TIMING_ENTRY", bytes, offset, size);
 
-            ulClkRange = Byte.toUnsignedInt(bytes[2]) << 16 | 
-                         Byte.toUnsignedInt(bytes[1]) << 8 | 
-                         Byte.toUnsignedInt(bytes[0]);
-            ucIndex = bytes[3];
-            System.arraycopy(bytes, 4, ucLatency, 0, 0x30);
+            ulClkRange = uint24(bytes, offset);
+            ucIndex = bytes.get(offset + 3);
+            bytes.get(offset + 4, ucLatency);
         }
     }
 
-    private byte[] bios_bytes;
-    private int VRAM_Timings_offset;
+    static final int ATOM_ROM_CHECKSUM_OFFSET = 0x21;
+    private static final int MIN_BIOS_SIZE = 0x4A;
+    // ucMemoryType, the low nibble is the vendor specific revision
+    private static final int MEMORY_TYPE_GDDR5 = 0x50;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // guarded by lock, from here to history
+    private ByteBuffer bios;
+    private int checksum_size, checksum_sum;
+    private long version;       // the number of writes, undos and redos
+    private final TreeMap<Integer, Integer> dirty_ranges = new TreeMap<>();
+    // what the parts of dirty_ranges held before they were first written
+    private final TreeMap<Integer, byte[]> originals = new TreeMap<>();
+    private final EditHistory history = new EditHistory();
+    private Path bios_path;     // only set if bios is mapped
+    private volatile ATOM_VRAM_INFO vram_info;
+    private volatile String[] part_numbers;
+    private int VRAM_Timings_offset, strap_count;
+    private HashMap<Integer, Integer> strap_index;
     private ATOM_ROM_HEADER rom_header;
     private ATOM_MASTER_DATA_TABLE master_data_table;
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/*
+ * micro benchmarks for parsing, searching, patching and checksumming
+ * over synthetic ROM images of different sizes and strap counts
+ * reports the time and the bytes allocated per operation
+ *
+ * usage: TimingsEditorBenchmark [-t MS] [-s SIZE_KB,...] [-n MODULES,...]
+ */
+public class TimingsEditorBenchmark
+{
+    interface Op
+    {
+        long run();
+    }
+
+    public static void main(String[] args)
+    {
+        int[] sizes_kb = { 64, 256, 1024 };
+        int[] module_counts = { 1, 3 };
+        long measure_ms = 1000;
+
+        for(int i = 0; i + 1 < args.length; i += 2)
+        {
+            switch(args[i])
+            {
+            case "-t": measure_ms = Long.parseLong(args[i + 1]); break;
+            case "-s": sizes_kb = parse_ints(args[i + 1]); break;
+            case "-n": module_counts = parse_ints(args[i + 1]); break;
+            default:
+                System.err.println("unknown option " + args[i]);
+                return;
+            }
+        }
+
+        System.out.println(String.format("%-16s %8s %7s %14s %12s", "benchmark", "rom KB", "straps", "ns/op", "B/op"));
+        for(int size_kb : sizes_kb)
+        {
+            for(int modules : module_counts)
+            {
+                byte[] rom = synthetic_rom(size_kb, modules, CLOCKS_MHZ);
+                int straps = modules * CLOCKS_MHZ.length;
+                run_all(rom, size_kb, straps, measure_ms);
+            }
+        }
+    }
+
+    private static void run_all(byte[] rom, int size_kb, int straps, long measure_ms)
+    {
+        TimingsEditor te = new TimingsEditor(rom.clone());
+        ArrayList<TimingsEditor.ATOM_VRAM_TIMING_ENTRY> timings = te.get_timings();
+        TimingsEditor.ATOM_VRAM_TIMING_ENTRY strap = timings.get(timings.size() - 1);
+
+        ByteBuffer haystack = ByteBuffer.wrap(rom);
+        byte[] missing = { (byte)0xDE, (byte)0xAD, (byte)0xBE, (byte)0xEF };
+        byte[][] needles = new byte[timings.size()][];
+        for(int i = 0; i < needles.length; i++)
+        {
+            int clk = timings.get(i).ulClkRange;
+            needles[i] = new byte[] { (byte)clk, (byte)(clk >> 8), (byte)(clk >> 16), timings.get(i).ucIndex };
+        }
+        ByteSearch.Multi multi = new ByteSearch.Multi(needles);
+
+        // a copy with the last strap changed, like a tuned ROM
+        byte[] tuned = rom.clone();
+        tuned[strap.offset + 4] ^= 1;
+
+        report("construct", size_kb, straps, measure_ms, () -> new TimingsEditor(rom).hashCode());
+        report("get_vram_info", size_kb, straps, measure_ms, () -> te.get_vram_info().size);
+        report("get_timings", size_kb, straps, measure_ms, () -> te.get_timings().size());
+        report("set_timings", size_kb, straps, measure_ms, () ->
+        {
+            strap.ucLatency[0]++;
+            return te.set_timings(strap) ? 1 : 0;
+        });
+        report("find_bytes", size_kb, straps, measure_ms, () -> ByteSearch.find(haystack, 0, rom.length, missing));
+        report("find_straps", size_kb, straps, measure_ms, () -> multi.find_first(haystack, 0, rom.length)[0]);
+        report("rom_diff", size_kb, straps, measure_ms, () -> RomDiff.diff(rom, tuned).regions.size());
+        report("fix_checksum", size_kb, straps, measure_ms, () ->
+        {
+            strap.ucLatency[1]++;
+            te.set_timings(strap);
+            te.fix_checksum();
+            return 0;
+        });
+    }
+
+    /*
+     * warms op up for a fifth of measure_ms, then runs it for measure_ms
+     * and prints the average time and allocation per call
+     */
+    private static void report(String name, int size_kb, int straps, long measure_ms, Op op)
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread_id = Thread.currentThread().getId();
+
+        long sink = 0;
+        long warmup_end = System.nanoTime() + measure_ms * 200_000L;
+        while(System.nanoTime() < warmup_end)
+            sink += op.run();
+
+        long ops = 0;
+        long alloc_start = threads.getThreadAllocatedBytes(thread_id);
+        long start = System.nanoTime(), end = start + measure_ms * 1_000_000L, now;
+        do
+        {
+            // check the clock every 64 calls so it doesn't dominate fast ops
+            for(int i = 0; i < 64; i++)
+                sink += op.run();
+            ops += 64;
+        }
+        while((now = System.nanoTime()) < end);
+        long allocated = threads.getThreadAllocatedBytes(thread_id) - alloc_start;
+
+        blackhole += sink;
+        System.out.println(String.format("%-16s %8d %7d %14.1f %12.1f",
+            name, size_kb, straps, (double)(now - start) / ops, (double)allocated / ops));
+    }
+
+    /*
+     * builds a checksummed ROM with a legacy header, an ATOM_ROM_HEADER, a master data table
+     * and a v2.2 ATOM_VRAM_INFO holding modules v8 modules whose straps cover clocks_mhz
+     */
+    public static byte[] synthetic_rom(int size_kb, int modules, int[] clocks_mhz)
+    {
+        int blocks = Math.min(size_kb * 2, 255);
+        byte[] rom = new byte[size_kb * 1024];
+        ByteBuffer b = ByteBuffer.wrap(rom).order(ByteOrder.LITTLE_ENDIAN);
+
+        // legacy expansion ROM header, size in 512 byte blocks
+        b.put(0, (byte)0x55).put(1, (byte)0xAA).put(2, (byte)blocks);
+
+        final int rom_header = 0x200, master_data_table = 0x240, vram_info = 0x300;
+        b.putShort(0x48, (short)rom_header);
+        b.putShort(rom_header, (short)0x24).put(rom_header + 2, (byte)1).put(rom_header + 3, (byte)1);
+        b.putInt(rom_header + 4, 0x4D4F5441);
+        b.putShort(rom_header + 32, (short)master_data_table);
+
+        b.putShort(master_data_table, (short)74).put(master_data_table + 2, (byte)1).put(master_data_table + 3, (byte)1);
+        b.putShort(master_data_table + 4 + 28 * 2, (short)vram_info);
+
+        b.put(vram_info + 2, (byte)2).put(vram_info + 3, (byte)2);
+        b.put(vram_info + 16, (byte)modules).put(vram_info + 18, (byte)8);
+        int offset = vram_info + 20;
+        for(int m = 0; m < modules; m++, offset += 64)
+        {
+            b.putShort(offset + 4, (short)64);
+            byte[] part_number = String.format("SYNTH%07d", m).getBytes();
+            b.put(offset + 44, part_number);
+        }
+
+        // ATOM_INIT_REG_BLOCK with a dummy register index table, followed by the straps
+        b.putShort(vram_info + 6, (short)(offset - vram_info));
+        b.putShort(offset, (short)0x2A).putShort(offset + 2, (short)0x34);
+        offset += 4 + 0x2A;
+        for(int m = 0; m < modules; m++)
+        {
+            for(int mhz : clocks_mhz)
+            {
+                int clk = mhz * 100;
+                b.put(offset, (byte)clk).put(offset + 1, (byte)(clk >> 8)).put(offset + 2, (byte)(clk >> 16));
+                b.put(offset + 3, (byte)m);
+                for(int i = 0; i < 0x30; i++)
+                    b.put(offset + 4 + i, (byte)(i * 7 + mhz + m));
+                offset += 0x34;
+            }
+        }
+        offset += 4;    // terminating 0 clock
+        b.putShort(vram_info, (short)(offset - vram_info));
+
+        byte sum = 0;
+        for(int i = 0; i < blocks * 512; i++)
+            sum += rom[i];
+        rom[0x21] -= sum;
+
+        return rom;
+    }
+
+    private static int[] parse_ints(String s)
+    {
+        String[] parts = s.split(",");
+        int[] values = new int[parts.length];
+        for(int i = 0; i < parts.length; i++)
+            values[i] = Integer.parseInt(parts[i].trim());
+
+        return values;
+    }
+
+    private static final int[] CLOCKS_MHZ = { 400, 800, 1000, 1250, 1375, 1500, 1625, 1750, 2000 };
+
+    public static volatile long blackhole;
+}
\ No newline at end of file
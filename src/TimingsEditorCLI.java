@@ -0,0 +1,285 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * headless batch mode: applies strap patches to many ROMs at once
+ */
+public class TimingsEditorCLI
+{
+    private static final String USAGE =
+        "usage: TimingsEditorCLI [options] -p INDEX:FROM_MHZ[:TO_MHZ]... <rom|directory|glob>...\n" +
+        "  -p, --patch SPEC   copy the FROM_MHZ strap of INDEX onto every higher strap (up to TO_MHZ)\n" +
+        "                     INDEX can be * for every RAM IC, may be given more than once\n" +
+        "  -o, --out DIR      write the patched ROMs to DIR\n" +
+        "  -i, --in-place     overwrite the input ROMs instead\n" +
+        "  -d, --delta        write a ROM patch (see RomPatch) to DIR for each ROM instead of the patched ROM\n" +
+        "  -j, --jobs N       number of ROMs to patch in parallel (default: number of CPUs)\n" +
+        "  -m, --mapped       memory map the ROMs instead of reading them into the heap,\n" +
+        "                     ROMs that can't be written are still read\n" +
+        "  -f, --flash        the inputs are full flash dumps or multi-image ROMs, patch every ATOM image in them\n" +
+        "  -s, --stats        print the time spent in each stage when done";
+
+    public static void main(String[] args)
+    {
+        ArrayList<StrapPatch> patches = new ArrayList<>();
+        ArrayList<String> inputs = new ArrayList<>();
+        Path out_dir = null;
+        boolean in_place = false, delta = false, mapped = false, flash = false, stats = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+
+        try
+        {
+            for(int i = 0; i < args.length; i++)
+            {
+                switch(args[i])
+                {
+                case "-p": case "--patch":
+                    patches.add(StrapPatch.parse(next_arg(args, ++i)));
+                    break;
+                case "-o": case "--out":
+                    out_dir = Paths.get(next_arg(args, ++i));
+                    break;
+                case "-i": case "--in-place":
+                    in_place = true;
+                    break;
+                case "-d": case "--delta":
+                    delta = true;
+                    break;
+                case "-j": case "--jobs":
+                    jobs = Integer.parseInt(next_arg(args, ++i));
+                    if(jobs < 1) throw new IllegalArgumentException("--jobs must be at least 1");
+                    break;
+                case "-m": case "--mapped":
+                    mapped = true;
+                    break;
+                case "-f": case "--flash":
+                    flash = true;
+                    break;
+                case "-s": case "--stats":
+                    stats = true;
+                    break;
+                case "-h": case "--help":
+                    System.out.println(USAGE);
+                    return;
+                default:
+                    if(args[i].startsWith("-"))
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                    inputs.add(args[i]);
+                }
+            }
+
+            if(patches.isEmpty() || inputs.isEmpty())
+                throw new IllegalArgumentException("expected at least one patch and one ROM");
+            if(in_place == (out_dir != null))
+                throw new IllegalArgumentException("expected exactly one of --out or --in-place");
+            if(delta && (out_dir == null || flash))
+                throw new IllegalArgumentException("--delta needs --out and can't be used with --flash");
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        List<Path> roms;
+        try
+        {
+            roms = expand_inputs(inputs);
+            check_unique_outputs(roms, out_dir != null);
+            if(out_dir != null) Files.createDirectories(out_dir);
+        }
+        catch(IOException e)
+        {
+            System.err.println("failed to list ROMs: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        int failed = run(roms, patches, out_dir, delta, mapped, flash, jobs);
+        System.out.println(String.format("%d patched, %d failed", roms.size() - failed, failed));
+        if(stats)
+            System.err.print(TimingsEditorMetrics.report());
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /*
+     * patches every ROM on a pool of jobs threads, printing one line per ROM as it finishes
+     * writes to out_dir, or back to the ROM if out_dir is null
+     * with delta set only a ROM patch named after the ROM plus .rpatch is written to out_dir
+     * with flash set every ATOM image found by RomImageScanner is patched instead of the whole file
+     * returns the number of ROMs that failed
+     */
+    public static int run(List<Path> roms, List<StrapPatch> patches, Path out_dir, boolean delta, boolean mapped, boolean flash, int jobs)
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        CompletionService<String> results = new ExecutorCompletionService<>(pool);
+        for(Path rom : roms)
+        {
+            Path out = out_dir == null ? rom : out_dir.resolve(rom.getFileName() + (delta ? ".rpatch" : ""));
+            results.submit(new Callable<String>()
+            {
+                @Override
+                public String call() throws Exception
+                {
+                    return flash ? patch_flash(rom, out, patches) : patch_rom(rom, out, patches, delta, mapped);
+                }
+            });
+        }
+
+        int failed = 0;
+        for(int i = 0; i < roms.size(); i++)
+        {
+            try
+            {
+                System.out.println("OK   " + results.take().get());
+            }
+            catch(ExecutionException e)
+            {
+                failed++;
+                System.out.println("FAIL " + e.getCause().getMessage());
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                failed += roms.size() - i;
+                break;
+            }
+        }
+        pool.shutdownNow();
+
+        return failed;
+    }
+
+    private static String patch_rom(Path rom, Path out, List<StrapPatch> patches, boolean delta, boolean mapped) throws Exception
+    {
+        try
+        {
+            TimingsEditor te = new TimingsEditor(rom.toString(), mapped);
+
+            int count = 0;
+            for(StrapPatch p : patches)
+                count += p.apply(te);
+
+            if(delta)
+                te.create_patch().write(out);
+            else if(!te.save_bios(out.toString()))
+                throw new IOException("failed to write to " + out);
+
+            return String.format("%s -> %s (%d straps)", rom, out, count);
+        }
+        catch(Exception e)
+        {
+            throw new Exception(rom + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String patch_flash(Path rom, Path out, List<StrapPatch> patches) throws Exception
+    {
+        try
+        {
+            if(!Files.exists(out) || !Files.isSameFile(rom, out))
+                Files.copy(rom, out, StandardCopyOption.REPLACE_EXISTING);
+
+            int[] count = new int[1];
+            int images = RomImageScanner.patch_all(out, new RomImageScanner.Patcher()
+            {
+                @Override
+                public void patch(TimingsEditor te, RomImageScanner.Image image)
+                {
+                    for(StrapPatch p : patches)
+                        count[0] += p.apply(te);
+                }
+            });
+            if(images == 0)
+                throw new IOException("no ATOM BIOS image found");
+
+            return String.format("%s -> %s (%d images, %d straps)", rom, out, images, count[0]);
+        }
+        catch(Exception e)
+        {
+            throw new Exception(rom + ": " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     * throws if two of roms would be written to the same file, i.e. have the
+     * same file name when by_name is set (they go to one directory) or are
+     * the same file otherwise
+     */
+    static void check_unique_outputs(List<Path> roms, boolean by_name) throws IllegalArgumentException
+    {
+        HashMap<Path, Path> outputs = new HashMap<>();
+        for(Path rom : roms)
+        {
+            Path key = by_name ? rom.getFileName() : rom.toAbsolutePath().normalize();
+            Path other = outputs.putIfAbsent(key, rom);
+            if(other != null)
+                throw new IllegalArgumentException(String.format("%s and %s would be written to the same file", other, rom));
+        }
+    }
+
+    /*
+     * a directory expands to every file in it, a glob such as roms/*.rom
+     * expands to the matching files in its directory
+     */
+    static List<Path> expand_inputs(List<String> inputs) throws IOException
+    {
+        ArrayList<Path> roms = new ArrayList<>();
+        for(String input : inputs)
+        {
+            if(input.matches(".*[*?\\[{].*"))
+            {
+                // only the file name may contain a glob
+                int sep = Math.max(input.lastIndexOf('/'), input.lastIndexOf('\\'));
+                Path dir = Paths.get(sep < 0 ? "." : input.substring(0, sep + 1));
+                try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir, input.substring(sep + 1)))
+                {
+                    for(Path p : stream)
+                        if(Files.isRegularFile(p)) roms.add(p);
+                }
+                continue;
+            }
+
+            Path path = Paths.get(input);
+            if(Files.isDirectory(path))
+            {
+                try(DirectoryStream<Path> stream = Files.newDirectoryStream(path))
+                {
+                    for(Path p : stream)
+                        if(Files.isRegularFile(p)) roms.add(p);
+                }
+            }
+            else roms.add(path);
+        }
+
+        return roms;
+    }
+
+    private static String next_arg(String[] args, int i)
+    {
+        if(i >= args.length)
+            throw new IllegalArgumentException("missing value for " + args[i - 1]);
+
+        return args[i];
+    }
+}
\ No newline at end of file
@@ -1,20 +1,30 @@
 import java.awt.BorderLayout;
-import java.awt.Color;
-import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
-import java.awt.FlowLayout;
+import java.awt.FontMetrics;
 import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
+import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
@@ -30,16 +40,22 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
+import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
+import javax.swing.SwingWorker;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TimingsEditorGUI extends JFrame
 {
@@ -61,6 +77,21 @@ public class TimingsEditorGUI extends JFrame
 		p.add(lbl_file);
 		main_panel.add(p);
 
+		progress_bar.setStringPainted(true);
+		panel_progress.add(progress_bar);
+		btn_cancel.addActionListener(new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				if(current_worker != null)
+					current_worker.cancel(true);
+			}
+		});
+		panel_progress.add(btn_cancel);
+		panel_progress.setVisible(false);
+		main_panel.add(panel_progress);
+
 		setSize(300, 200);
 		setResizable(false);
 		setVisible(true);
@@ -92,43 +123,7 @@ public class TimingsEditorGUI extends JFrame
 				if(e.getSource() == menu_item_open)
 				{
 					if(fc.showOpenDialog(main_panel) == JFileChooser.APPROVE_OPTION)
-					{
-						try {
-							File file = fc.getSelectedFile();
-
-							timings_editor = new TimingsEditor(file.getAbsolutePath());
-							timings = timings_editor.get_timings();
-
-							lbl_file.setText(file.getName());
-
-							SwingUtilities.invokeLater(new Runnable()
-							{
-								@Override
-								public void run()
-								{
-									if(panel_timings != null)
-									{
-										main_panel.remove(panel_timings);
-										panel_timings = null;
-									}
-
-									if(panel_indices == null)
-										add_indices_panel();
-									
-									add_timings_panel(timings.get(0).ucIndex);
-									revalidate();
-									repaint();
-									pack();
-
-									update_indices_cbox();
-								}
-							});
-						}
-						catch(IllegalArgumentException ex)
-						{
-							show_error_dialog(ex.getMessage());
-						}
-					}
+						open_bios(fc.getSelectedFile());
 				}
 				else if(e.getSource() == menu_item_saveas)
 				{
@@ -139,35 +134,9 @@ public class TimingsEditorGUI extends JFrame
 					}
 
 					if(fc.showSaveDialog(main_panel) == JFileChooser.APPROVE_OPTION)
-					{
-						String bios_file_path = fc.getSelectedFile().getAbsolutePath();
-
-						if(timings_editor.save_bios(bios_file_path))
-							show_success_dialog("Successfully saved to " + bios_file_path);
-						else show_error_dialog("Failed to save BIOS");
-					}
+						save_bios(fc.getSelectedFile().getAbsolutePath());
 				}
 			}
-
-			private void show_error_dialog(String msg)
-			{
-				JOptionPane.showMessageDialog(
-					main_panel,
-					msg,
-					"Error",
-					JOptionPane.ERROR_MESSAGE
-				);
-			}
-			
-			private void show_success_dialog(String msg)
-			{
-				JOptionPane.showMessageDialog(
-					main_panel,
-					msg,
-					"Success",
-					JOptionPane.INFORMATION_MESSAGE
-				);
-			}
 		};
 
 		JMenu menu_file = new JMenu("File");
@@ -181,9 +150,345 @@ public class TimingsEditorGUI extends JFrame
 		menu_item_saveas.addActionListener(listener);
 		menu_file.add(menu_item_saveas);
 
+		ActionListener edit_listener = new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				if(timings_editor == null) return;
+
+				if(e.getSource() == menu_item_propagate)
+					propagate_selected_strap();
+				else
+					undo_redo(e.getSource() == menu_item_undo);
+			}
+		};
+
+		JMenu menu_edit = new JMenu("Edit");
+		menu_bar.add(menu_edit);
+
+		menu_item_undo = new JMenuItem("Undo");
+		menu_item_undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+		menu_item_undo.addActionListener(edit_listener);
+		menu_edit.add(menu_item_undo);
+
+		menu_item_redo = new JMenuItem("Redo");
+		menu_item_redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+		menu_item_redo.addActionListener(edit_listener);
+		menu_edit.add(menu_item_redo);
+
+		menu_item_propagate = new JMenuItem("Copy Strap to Higher Clocks");
+		menu_item_propagate.addActionListener(edit_listener);
+		menu_edit.add(menu_item_propagate);
+
 		setJMenuBar(menu_bar);
 	}
 
+	/*
+	 * reads file in IO_CHUNK_SIZE pieces and parses it on a SwingWorker,
+	 * so the window keeps painting while a slow drive is read and the
+	 * read can be cancelled part way
+	 */
+	private void open_bios(File file)
+	{
+		SwingWorker<TimingsEditor, Void> worker = new SwingWorker<TimingsEditor, Void>()
+		{
+			@Override
+			protected TimingsEditor doInBackground() throws IOException
+			{
+				long start = TimingsEditorMetrics.start();
+				byte[] bytes;
+				try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+				{
+					long size = channel.size();
+					if(size > Integer.MAX_VALUE)
+						throw new IOException("the file is too large");
+
+					bytes = new byte[(int)size];
+					ByteBuffer dst = ByteBuffer.wrap(bytes);
+					while(dst.hasRemaining())
+					{
+						if(isCancelled()) return null;
+
+						dst.limit(Math.min(dst.capacity(), dst.position() + IO_CHUNK_SIZE));
+						if(channel.read(dst) < 0)
+							throw new IOException("the file got shorter while it was read");
+						setProgress((int)(100L * dst.position() / size));
+					}
+				}
+				catch(IOException e)
+				{
+					TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.READ, start, 0, true);
+					throw e;
+				}
+				TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.READ, start, bytes.length, false);
+
+				TimingsEditor editor = new TimingsEditor(bytes);
+				table = editor.get_strap_table();
+				fields = editor.has_strap_fields();
+				return editor;
+			}
+
+			@Override
+			protected void done()
+			{
+				finish_worker();
+				if(isCancelled()) return;
+
+				TimingsEditor editor;
+				try
+				{
+					editor = get();
+				}
+				catch(InterruptedException e)
+				{
+					return;
+				}
+				catch(ExecutionException e)
+				{
+					show_error_dialog("Failed to open " + file.getName() + ": " + e.getCause().getMessage());
+					return;
+				}
+
+				if(table == null || table.size() == 0)
+				{
+					show_error_dialog("Failed to find the straps");
+					return;
+				}
+				timings_editor = editor;
+
+				lbl_file.setText(file.getName());
+
+				if(panel_indices == null)
+					add_indices_panel();
+				if(panel_timings == null)
+					add_timings_panel();
+
+				strap_model.set_straps(table, table.get_index(0), fields);
+				size_columns();
+				panel_timings.setBorder(BorderFactory.createTitledBorder(fields ? "Straps" :
+					"Straps (hex only, the bit fields are only known for GDDR5 Polaris BIOSes)"));
+				update_indices_cbox();
+				revalidate();
+				repaint();
+				pack();
+			}
+
+			// only read by done(), after get() has made it visible
+			private StrapTable table;
+			private boolean fields;
+		};
+		start_worker(worker, "Reading " + file.getName());
+	}
+
+	/*
+	 * writes the BIOS on a SwingWorker, to a file next to bios_file_path
+	 * that replaces it once it is complete, so a cancelled or failed save
+	 * leaves whatever was there before
+	 */
+	private void save_bios(String bios_file_path)
+	{
+		TimingsEditor editor = timings_editor;
+		SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>()
+		{
+			@Override
+			protected Void doInBackground() throws Exception
+			{
+				// queued behind any pending strap edits, to_bytes() also fixes the checksum
+				byte[] bytes = model_executor.submit(new Callable<byte[]>()
+				{
+					@Override
+					public byte[] call()
+					{
+						return editor.to_bytes();
+					}
+				}).get();
+
+				long start = TimingsEditorMetrics.start();
+				Path target = Paths.get(bios_file_path);
+				Path part = Paths.get(bios_file_path + ".part");
+				boolean saved = false;
+				try
+				{
+					try(FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+					{
+						ByteBuffer src = ByteBuffer.wrap(bytes);
+						while(src.hasRemaining())
+						{
+							if(isCancelled()) return null;
+
+							src.limit(Math.min(src.capacity(), src.position() + IO_CHUNK_SIZE));
+							channel.write(src);
+							setProgress((int)(100L * src.position() / Math.max(bytes.length, 1)));
+						}
+						channel.force(false);
+					}
+					if(isCancelled()) return null;
+
+					try
+					{
+						Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					}
+					catch(AtomicMoveNotSupportedException e)
+					{
+						Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+					}
+					saved = true;
+				}
+				finally
+				{
+					if(!saved) Files.deleteIfExists(part);
+					TimingsEditorMetrics.record(TimingsEditorMetrics.Stage.WRITE, start, saved ? bytes.length : 0, !saved && !isCancelled());
+				}
+
+				return null;
+			}
+
+			@Override
+			protected void done()
+			{
+				finish_worker();
+				if(isCancelled()) return;
+
+				try
+				{
+					get();
+					show_success_dialog("Successfully saved to " + bios_file_path);
+				}
+				catch(InterruptedException e)
+				{
+					return;
+				}
+				catch(ExecutionException e)
+				{
+					show_error_dialog("Failed to save BIOS: " + e.getCause().getMessage());
+				}
+			}
+		};
+		start_worker(worker, "Saving " + Paths.get(bios_file_path).getFileName());
+	}
+
+	/*
+	 * shows the progress of worker, with a button to cancel it, and runs it
+	 * open and save are disabled until finish_worker()
+	 */
+	private void start_worker(SwingWorker<?, Void> worker, String status)
+	{
+		current_worker = worker;
+		menu_item_open.setEnabled(false);
+		menu_item_saveas.setEnabled(false);
+
+		progress_bar.setValue(0);
+		progress_bar.setString(status);
+		panel_progress.setVisible(true);
+		main_panel.revalidate();
+
+		worker.addPropertyChangeListener(new PropertyChangeListener()
+		{
+			@Override
+			public void propertyChange(PropertyChangeEvent e)
+			{
+				if(e.getPropertyName().equals("progress"))
+					progress_bar.setValue((Integer)e.getNewValue());
+			}
+		});
+		worker.execute();
+	}
+
+	private void finish_worker()
+	{
+		current_worker = null;
+		menu_item_open.setEnabled(true);
+		menu_item_saveas.setEnabled(true);
+
+		panel_progress.setVisible(false);
+		main_panel.revalidate();
+	}
+
+	private void show_error_dialog(String msg)
+	{
+		JOptionPane.showMessageDialog(
+			main_panel,
+			msg,
+			"Error",
+			JOptionPane.ERROR_MESSAGE
+		);
+	}
+
+	private void show_success_dialog(String msg)
+	{
+		JOptionPane.showMessageDialog(
+			main_panel,
+			msg,
+			"Success",
+			JOptionPane.INFORMATION_MESSAGE
+		);
+	}
+
+	/*
+	 * undoes or redoes the last strap edit on model_executor, then reloads
+	 * the straps into the table
+	 */
+	private void undo_redo(boolean undo)
+	{
+		TimingsEditor editor = timings_editor;
+		model_executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				boolean changed = undo ? editor.undo() : editor.redo();
+				if(changed) reload_straps(editor);
+			}
+		});
+	}
+
+	/*
+	 * copies the selected strap onto every higher strap of the shown RAM IC
+	 * as a single undo step
+	 */
+	private void propagate_selected_strap()
+	{
+		int row = table_straps.getSelectedRow();
+		if(row == -1)
+		{
+			Toolkit.getDefaultToolkit().beep();
+			return;
+		}
+
+		TimingsEditor editor = timings_editor;
+		byte index = strap_model.get_index();
+		int clk_range = strap_model.get_clk_range(row);
+		model_executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				int changed = editor.propagate_strap(new byte[] { index }, clk_range, Integer.MAX_VALUE, null);
+				editor.checkpoint();
+				if(changed > 0) reload_straps(editor);
+			}
+		});
+	}
+
+	/*
+	 * called on model_executor after editor changed more than one strap,
+	 * points strap_model at a fresh copy of the straps
+	 */
+	private void reload_straps(TimingsEditor editor)
+	{
+		StrapTable table = editor.get_strap_table();
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(editor != timings_editor || table == null) return;
+				strap_model.set_straps(table, strap_model.get_index());
+			}
+		});
+	}
+
 	private void add_indices_panel()
 	{
 		panel_indices = new JPanel();
@@ -194,6 +499,21 @@ public class TimingsEditorGUI extends JFrame
 		JLabel lbl_indices = new JLabel("RAM IC Index: ");
 		p.add(lbl_indices);
 		cbox_indices = new JComboBox<>();
+		cbox_indices.addActionListener(new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e) 
+			{
+				if(cbox_indices.getSelectedItem() == null) return;
+				byte selected = (byte)Integer.parseInt(cbox_indices.getSelectedItem().toString());
+
+				// the columns stay the same, only the rows are swapped
+				strap_model.set_index(selected);
+
+				// update RAM IC name
+				txt_vram_ic.setText(timings_editor.get_part_number(Byte.toUnsignedInt(selected)));
+			}
+		});
 		p.add(cbox_indices);
 		panel_indices.add(p);
 
@@ -207,187 +527,116 @@ public class TimingsEditorGUI extends JFrame
 
 	private void update_indices_cbox()
 	{
-		if(timings == null || timings.isEmpty())
+		StrapTable straps = strap_model.get_straps();
+		if(straps == null || straps.size() == 0)
 			return;
 
 		// get unique indices
-		ArrayList<String> indices = new ArrayList<>();
-		for(TimingsEditor.ATOM_VRAM_TIMING_ENTRY e : timings)
-		{
-			String index = String.valueOf(Byte.toUnsignedInt(e.ucIndex));
+		byte[] unique = straps.get_indices();
+		String[] indices = new String[unique.length];
+		for(int i = 0; i < unique.length; i++)
+			indices[i] = String.valueOf(Byte.toUnsignedInt(unique[i]));
 
-			if(!indices.contains(index)) 
-				indices.add(index);
-		}
-
-		DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>(indices.toArray(new String[indices.size()]));
+		DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>(indices);
 		cbox_indices.setModel(model);
-		
-		cbox_indices.addActionListener(new ActionListener()
-		{
-			@Override
-			public void actionPerformed(ActionEvent e) 
-			{
-				byte selected = (byte)Integer.parseInt(cbox_indices.getSelectedItem().toString());
+		cbox_indices.setSelectedIndex(0);
+	}
 
-				/*
-				 * remove and add as the selected RAM IC may have
-				 * different frequencies compared to the current
-				 */
-				SwingUtilities.invokeLater(new Runnable()
-				{
-					@Override
-					public void run()
-					{
-						if(panel_timings != null)
-						{
-							main_panel.remove(panel_timings);
-							panel_timings = null;
-						}
-						add_timings_panel(selected);
-						revalidate();
-						repaint();
-						pack();
-					}
-				});
+	/*
+	 * a single table over strap_model, which is pointed at other straps or
+	 * another RAM IC instead of being rebuilt
+	 */
+	private void add_timings_panel()
+	{
+		panel_timings = new JPanel(new BorderLayout());
 
-				// update RAM IC name
-				TimingsEditor.ATOM_VRAM_INFO vram_info = timings_editor.get_vram_info();
-				ArrayList<String> vram_ics = new ArrayList<>();
-				for(int i = 0; i < vram_info.sModules.length; i++)
-				{
-					switch(vram_info.ucVramModuleVer)
-					{
-					case 7:
-					{
-						TimingsEditor.ATOM_VRAM_MODULE_V7 m = (TimingsEditor.ATOM_VRAM_MODULE_V7)(vram_info.sModules[i]);
-						vram_ics.add(m.strMemPNString);
-						break;
-					}
-					case 8:
-					{
-						TimingsEditor.ATOM_VRAM_MODULE_V8 m = (TimingsEditor.ATOM_VRAM_MODULE_V8)(vram_info.sModules[i]);
-						vram_ics.add(m.strMemPNString);
-						break;
-					}
-					}
-				}
-				txt_vram_ic.setText(vram_ics.get(selected));
-			}
-		});
+		table_straps = new JTable(strap_model);
+		table_straps.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+		table_straps.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		table_straps.getTableHeader().setReorderingAllowed(false);
+		size_columns();
 
-		cbox_indices.setSelectedIndex(0);
+		JScrollPane scroll = new JScrollPane(table_straps);
+		scroll.setPreferredSize(new Dimension(TABLE_WIDTH, TABLE_HEIGHT));
+		panel_timings.add(scroll, BorderLayout.CENTER);
+		panel_timings.setBorder(BorderFactory.createTitledBorder("Straps"));
+
+		main_panel.add(panel_timings);
 	}
 
-	private void add_timings_panel(byte ram_ic_index)
+	/*
+	 * fits each column to its header or, for the hex column, a whole strap
+	 * the columns are recreated when the bit fields are shown or hidden
+	 */
+	private void size_columns()
 	{
-		panel_timings = new JPanel();
-		BoxLayout layout = new BoxLayout(panel_timings, BoxLayout.Y_AXIS);
-		panel_timings.setLayout(layout);
+		FontMetrics fm = table_straps.getFontMetrics(table_straps.getFont());
+		for(int i = 0; i < strap_model.getColumnCount(); i++)
+		{
+			String longest = i == StrapTableModel.COLUMN_HEX ? "0".repeat(2 * StrapTable.LATENCY_SIZE) : strap_model.getColumnName(i);
+			table_straps.getColumnModel().getColumn(i).setPreferredWidth(fm.stringWidth(longest) + 16);
+		}
+	}
 
-		for(TimingsEditor.ATOM_VRAM_TIMING_ENTRY e : timings)
+	/*
+	 * called on the EDT once a cell edit is committed, writes the strap to
+	 * the BIOS on model_executor so set_timings() never runs on the EDT
+	 */
+	private void apply_timings(byte index, int clk_range, byte[] latency)
+	{
+		TimingsEditor editor = timings_editor;
+		model_executor.execute(new Runnable()
 		{
-			if(e.ucIndex == ram_ic_index)
+			@Override
+			public void run()
 			{
-				int freq = e.ulClkRange / 100;	// frequency in MHz
-				JPanel panel_row = new JPanel(new FlowLayout());
-
-				JLabel lbl_frequency = new JLabel(String.format("%d MHz: ", freq));
-				set_width(lbl_frequency, 70);
-				panel_row.add(lbl_frequency);
-
-				JTextArea txt_timings = new JTextArea(1, 20);
-				StringBuilder sb = new StringBuilder();
-				for(byte b : e.ucLatency)
-					sb.append(String.format("%02X", b));
-				txt_timings.setText(sb.toString());
-				txt_timings.setCaretPosition(0);
-				txt_timings.getDocument().addDocumentListener(new DocumentListener()
+				// set_timings() uses the ulClkRange and ucIndex as the "key"
+				boolean applied = editor.set_timings(index, clk_range, latency);
+				// each applied edit is one undo step
+				editor.checkpoint();
+				SwingUtilities.invokeLater(new Runnable()
 				{
 					@Override
-					public void removeUpdate(DocumentEvent e) 
-					{
-						changedUpdate(e);
-					}
-				
-					@Override
-					public void insertUpdate(DocumentEvent e) 
-					{
-						changedUpdate(e);
-					}
-				
-					@Override
-					public void changedUpdate(DocumentEvent e) 
-					{
-						String input = txt_timings.getText();
-			
-						if(input.isEmpty()) return;
-			
-						if(input.matches("^[0-9A-Fa-f]{96}$"))
-						{
-							txt_timings.setBackground(Color.WHITE);
-			
-							byte selected_index = (byte)Integer.parseInt(cbox_indices.getSelectedItem().toString());
-			
-							TimingsEditor.ATOM_VRAM_TIMING_ENTRY new_timings = null;
-							// find the timings
-							for(TimingsEditor.ATOM_VRAM_TIMING_ENTRY t : timings)
-							{
-								if(t.ulClkRange == freq * 100 && t.ucIndex == selected_index)
-								{
-									new_timings = t;
-									break;
-								}
-							}
-			
-							// set_timings() uses the ulClkRange and ucIndex as the "key"
-							byte[] new_timings_bytes = string_to_bytes(input);
-							System.arraycopy(new_timings_bytes, 0, new_timings.ucLatency, 0, new_timings_bytes.length);
-							timings_editor.set_timings(new_timings);
-						}
-						else
-						{
-							txt_timings.setBackground(new Color(0xFFFFAFAF));
-						}
-					}
-			
-					private byte[] string_to_bytes(String s)
+					public void run()
 					{
-						int len = s.length();
-						byte[] bytes = new byte[len / 2];
-						for(int i = 0; i < len ; i += 2)
+						if(!applied)
 						{
-							bytes[i / 2] = (byte)((Character.digit(s.charAt(i), 16) << 4) +
-													Character.digit(s.charAt(i + 1), 16));
+							Toolkit.getDefaultToolkit().beep();
+							return;
 						}
-			
-						return bytes;
+
+						if(editor == timings_editor)
+							strap_model.set_latency(index, clk_range, latency);
 					}
 				});
-				JScrollPane scroll = new JScrollPane(txt_timings, JScrollPane.VERTICAL_SCROLLBAR_NEVER, 
-													 JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
-				panel_row.add(scroll);
-
-				panel_timings.add(panel_row);
 			}
-		}
-
-		panel_timings.setBorder(BorderFactory.createTitledBorder("Straps"));
-
-		main_panel.add(panel_timings);
+		});
 	}
 
-	private void set_width(Component c, int width)
-	{
-		c.setPreferredSize(new Dimension(width, c.getPreferredSize().height));
-	}
+	private static final int TABLE_WIDTH = 900, TABLE_HEIGHT = 320;
+	// files are read and written in pieces of this size so progress and cancelling have a chance
+	private static final int IO_CHUNK_SIZE = 64 * 1024;
 
 	private Container main_panel = getContentPane();
+	// all writes to timings_editor happen here, in order
+	private final ExecutorService model_executor = Executors.newSingleThreadExecutor();
 	private JPanel panel_indices, panel_timings;
-	private JMenuItem menu_item_open, menu_item_saveas;
+	private JMenuItem menu_item_open, menu_item_saveas, menu_item_undo, menu_item_redo, menu_item_propagate;
 	private TimingsEditor timings_editor;
-	private ArrayList<TimingsEditor.ATOM_VRAM_TIMING_ENTRY> timings;
+	private final StrapTableModel strap_model = new StrapTableModel(new StrapTableModel.EditListener()
+	{
+		@Override
+		public void strap_edited(byte index, int clk_range, byte[] latency)
+		{
+			apply_timings(index, clk_range, latency);
+		}
+	});
+	private JTable table_straps;
 	private JComboBox<String> cbox_indices = new JComboBox<>();
 	private JLabel lbl_file = new JLabel("No BIOS opened");
+	private JPanel panel_progress = new JPanel();
+	private JProgressBar progress_bar = new JProgressBar(0, 100);
+	private JButton btn_cancel = new JButton("Cancel");
+	private SwingWorker<?, Void> current_worker;
 	private JTextField txt_vram_ic = new JTextField();
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * process wide counters and latency histograms for each stage of
+ * loading, parsing, patching and saving a BIOS
+ * every recorded call is also committed as a TimingsEditor.Stage JFR event
+ * while a recording has it enabled, e.g. java -XX:StartFlightRecording ...
+ */
+public class TimingsEditorMetrics
+{
+    public enum Stage
+    {
+        READ,               // reading or mapping the file
+        HEADER_SEARCH,      // locating ATOM_ROM_HEADER, the data tables and the straps
+        VRAM_INFO,          // parsing VRAM_Info, cache hits aren't counted
+        GET_TIMINGS,
+        SET_TIMINGS,
+        CHECKSUM,           // summing the image and fixing the checksum
+        WRITE               // saving the file
+    }
+
+    @Name("TimingsEditor.Stage")
+    @Label("Timings Editor Stage")
+    @Category("Timings Editor")
+    @Description("One stage of loading, parsing, patching or saving a BIOS")
+    static class StageEvent extends Event
+    {
+        @Label("Stage")
+        String stage;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    /*
+     * a consistent enough view of one stage, the counters are read one after another
+     */
+    public static class Snapshot
+    {
+        Snapshot(Stage stage, long count, long errors, long total_nanos, long max_nanos, long bytes, long[] buckets)
+        {
+            this.stage = stage;
+            this.count = count;
+            this.errors = errors;
+            this.total_nanos = total_nanos;
+            this.max_nanos = max_nanos;
+            this.bytes = bytes;
+            this.buckets = buckets;
+        }
+
+        public double mean_nanos()
+        {
+            return count == 0 ? 0 : (double)total_nanos / count;
+        }
+
+        /*
+         * returns the upper bound of the histogram bucket holding the p quantile (0 to 1),
+         * capped at the slowest call, so it overestimates by up to 2x
+         */
+        public long percentile_nanos(double p)
+        {
+            long total = 0;
+            for(long b : buckets)
+                total += b;
+            if(total == 0) return 0;
+
+            long rank = (long)Math.ceil(p * total);
+            long seen = 0;
+            for(int i = 0; i < buckets.length; i++)
+            {
+                seen += buckets[i];
+                if(seen >= Math.max(rank, 1))
+                    return i >= 63 ? max_nanos : Math.min(1L << i, max_nanos);
+            }
+
+            return max_nanos;
+        }
+
+        public final Stage stage;
+        public final long count, errors, total_nanos, max_nanos, bytes;
+        // buckets[i] counts calls that took less than 2^i ns but at least 2^(i-1)
+        public final long[] buckets;
+    }
+
+    /*
+     * returns a timestamp to pass to record()
+     */
+    public static long start()
+    {
+        return System.nanoTime();
+    }
+
+    public static void record(Stage stage, long start)
+    {
+        record(stage, start, 0, false);
+    }
+
+    /*
+     * records a call to stage that started at start (from start()) and
+     * processed bytes, failed if it ended with an error
+     */
+    public static void record(Stage stage, long start, long bytes, boolean failed)
+    {
+        long nanos = System.nanoTime() - start;
+        STAGES[stage.ordinal()].add(nanos, bytes, failed);
+
+        StageEvent event = new StageEvent();
+        if(event.isEnabled())
+        {
+            event.stage = stage.name();
+            event.nanos = nanos;
+            event.bytes = bytes;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+
+    public static Snapshot snapshot(Stage stage)
+    {
+        return STAGES[stage.ordinal()].snapshot(stage);
+    }
+
+    public static void reset()
+    {
+        for(Counters c : STAGES)
+            c.reset();
+    }
+
+    /*
+     * one line per stage that was recorded at least once
+     */
+    public static String report()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-14s %9s %7s %12s %12s %12s %12s%n",
+            "stage", "count", "errors", "mean us", "p50 us", "p99 us", "max us"));
+        for(Stage stage : Stage.values())
+        {
+            Snapshot s = snapshot(stage);
+            if(s.count == 0) continue;
+
+            sb.append(String.format("%-14s %9d %7d %12.1f %12.1f %12.1f %12.1f%n",
+                stage, s.count, s.errors, s.mean_nanos() / 1000,
+                s.percentile_nanos(0.5) / 1000.0, s.percentile_nanos(0.99) / 1000.0, s.max_nanos / 1000.0));
+        }
+
+        return sb.toString();
+    }
+
+    private static class Counters
+    {
+        Counters()
+        {
+            for(int i = 0; i < buckets.length; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        void add(long nanos, long bytes, boolean failed)
+        {
+            count.increment();
+            total_nanos.add(nanos);
+            max_nanos.accumulate(nanos);
+            if(bytes != 0) this.bytes.add(bytes);
+            if(failed) errors.increment();
+
+            // the number of bits needed for nanos, i.e. log2 rounded up
+            buckets[64 - Long.numberOfLeadingZeros(Math.max(nanos, 0))].increment();
+        }
+
+        void reset()
+        {
+            count.reset();
+            errors.reset();
+            total_nanos.reset();
+            bytes.reset();
+            max_nanos.reset();
+            for(LongAdder b : buckets)
+                b.reset();
+        }
+
+        Snapshot snapshot(Stage stage)
+        {
+            long[] b = new long[buckets.length];
+            for(int i = 0; i < b.length; i++)
+                b[i] = buckets[i].sum();
+
+            return new Snapshot(stage, count.sum(), errors.sum(), total_nanos.sum(), max_nanos.get(), bytes.sum(), b);
+        }
+
+        final LongAdder count = new LongAdder(), errors = new LongAdder();
+        final LongAdder total_nanos = new LongAdder(), bytes = new LongAdder();
+        final LongAccumulator max_nanos = new LongAccumulator(Math::max, 0);
+        final LongAdder[] buckets = new LongAdder[65];
+    }
+
+    private static final Counters[] STAGES = new Counters[Stage.values().length];
+    static
+    {
+        for(int i = 0; i < STAGES.length; i++)
+            STAGES[i] = new Counters();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,280 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * local HTTP service for patching ROMs without starting a JVM per ROM
+ *   POST /patch?p=INDEX:FROM_MHZ[:TO_MHZ]&p=...   body: the ROM
+ *     responds with the patched ROM, checksum fixed, and the number of
+ *     straps that changed in X-Straps-Patched
+ *   GET /metrics                                  TimingsEditorMetrics.report()
+ * parsed ROMs are cached by the SHA-256 of their bytes, so a base ROM that
+ * is posted again is only copied, not parsed
+ * requests run on virtual threads when the JVM has them
+ *
+ * usage: TimingsEditorServer [-p PORT] [-c CACHE_SIZE]
+ */
+public class TimingsEditorServer
+{
+    public static final int DEFAULT_PORT = 8086, DEFAULT_CACHE_SIZE = 64;
+    public static final int MAX_ROM_SIZE = 16 * 1024 * 1024;
+
+    public static void main(String[] args)
+    {
+        int port = DEFAULT_PORT, cache_size = DEFAULT_CACHE_SIZE;
+        try
+        {
+            for(int i = 0; i < args.length; i++)
+            {
+                switch(args[i])
+                {
+                case "-p": case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-c": case "--cache":
+                    cache_size = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+        }
+        catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println("usage: TimingsEditorServer [-p PORT] [-c CACHE_SIZE]");
+            System.exit(2);
+        }
+
+        try
+        {
+            TimingsEditorServer server = new TimingsEditorServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), cache_size);
+            server.start();
+            System.out.println("listening on http://localhost:" + server.get_port() + "/patch");
+        }
+        catch(IOException e)
+        {
+            System.err.println("failed to start the server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public TimingsEditorServer(InetSocketAddress address, int cache_size) throws IOException
+    {
+        this.cache = new ParseCache(cache_size);
+        server = HttpServer.create(address, 0);
+        server.createContext("/patch", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                handle_patch(exchange);
+            }
+        });
+        server.createContext("/metrics", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                respond(exchange, 200, "text/plain", TimingsEditorMetrics.report().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        executor = new_executor();
+        server.setExecutor(executor);
+    }
+
+    public void start()
+    {
+        server.start();
+    }
+
+    /*
+     * stops accepting requests and waits up to delay_seconds for the running ones
+     */
+    public void stop(int delay_seconds)
+    {
+        server.stop(delay_seconds);
+        executor.shutdown();
+    }
+
+    public int get_port()
+    {
+        return server.getAddress().getPort();
+    }
+
+    private void handle_patch(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if(!exchange.getRequestMethod().equals("POST"))
+            {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "text/plain", "expected POST\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            ArrayList<StrapPatch> patches = new ArrayList<>();
+            for(String spec : query_values(exchange.getRequestURI().getRawQuery(), "p"))
+                patches.add(StrapPatch.parse(spec));
+            if(patches.isEmpty())
+                throw new IllegalArgumentException("expected at least one p=INDEX:FROM_MHZ[:TO_MHZ]");
+
+            byte[] rom = read_body(exchange.getRequestBody());
+            TimingsEditor te = cache.get(rom).copy();
+
+            int count = 0;
+            for(StrapPatch p : patches)
+                count += p.apply(te);
+
+            exchange.getResponseHeaders().set("X-Straps-Patched", String.valueOf(count));
+            respond(exchange, 200, "application/octet-stream", te.to_bytes());
+        }
+        catch(IllegalArgumentException e)
+        {
+            respond(exchange, 400, "text/plain", (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        catch(IndexOutOfBoundsException e)
+        {
+            // a ROM the parser didn't catch as malformed
+            respond(exchange, 400, "text/plain", ("invalid BIOS: " + e + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        catch(RuntimeException e)
+        {
+            respond(exchange, 500, "text/plain", (e + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        catch(IOException e)
+        {
+            // usually the client went away mid request, so the answer is likely lost too
+            System.err.println("patch request from " + exchange.getRemoteAddress() + " failed: " + e);
+            try
+            {
+                respond(exchange, 400, "text/plain", ("failed to read the request: " + e + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            catch(IOException ignored)
+            {
+                // nobody left to tell
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    /*
+     * LRU map from the SHA-256 of a ROM to an editor that is never edited,
+     * only copied
+     */
+    private static class ParseCache
+    {
+        ParseCache(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        TimingsEditor get(byte[] rom) throws IllegalArgumentException
+        {
+            ByteBuffer key = ByteBuffer.wrap(RomPatch.sha256(rom));
+            synchronized(editors)
+            {
+                TimingsEditor te = editors.get(key);
+                if(te != null) return te;
+            }
+
+            // parse outside the lock, a ROM posted twice at once is just parsed twice
+            TimingsEditor te = new TimingsEditor(rom);
+            synchronized(editors)
+            {
+                editors.put(key, te);
+            }
+
+            return te;
+        }
+
+        private final int capacity;
+        private final LinkedHashMap<ByteBuffer, TimingsEditor> editors = new LinkedHashMap<ByteBuffer, TimingsEditor>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, TimingsEditor> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /*
+     * one virtual thread per request if Executors.newVirtualThreadPerTaskExecutor
+     * exists (JDK 21+), looked up by reflection so this still runs on older JDKs
+     * otherwise a cached pool of platform threads
+     */
+    private static ExecutorService new_executor()
+    {
+        try
+        {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException e)
+        {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private static byte[] read_body(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 * 1024);
+        byte[] buffer = new byte[64 * 1024];
+        for(int n; (n = in.read(buffer)) != -1; )
+        {
+            out.write(buffer, 0, n);
+            if(out.size() > MAX_ROM_SIZE)
+                throw new IllegalArgumentException("ROM larger than " + MAX_ROM_SIZE + " bytes");
+        }
+
+        return out.toByteArray();
+    }
+
+    private static List<String> query_values(String query, String name)
+    {
+        ArrayList<String> values = new ArrayList<>();
+        if(query == null) return values;
+
+        for(String pair : query.split("&"))
+        {
+            int eq = pair.indexOf('=');
+            if(eq != -1 && URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8).equals(name))
+                values.add(URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+
+        return values;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String content_type, byte[] body) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", content_type);
+        exchange.sendResponseHeaders(status, body.length);
+        try(OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ParseCache cache;
+}
\ No newline at end of file
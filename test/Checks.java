@@ -0,0 +1,26 @@
+/*
+ * the assertions of the main based tests: prints one line per check and
+ * exits with 1 at the end if any of them failed
+ */
+final class Checks
+{
+    void check(String name, boolean ok)
+    {
+        check(name, ok, "");
+    }
+
+    void check(String name, boolean ok, Object detail)
+    {
+        String suffix = detail.toString().isEmpty() ? "" : ": " + detail;
+        System.out.println((ok ? "OK   " : "FAIL ") + name + suffix);
+        if(!ok) failed++;
+    }
+
+    void exit()
+    {
+        System.out.println(failed == 0 ? "all passed" : failed + " failed");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private int failed;
+}
\ No newline at end of file
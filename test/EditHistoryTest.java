@@ -0,0 +1,123 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * undo and redo of EditHistory over a plain image, and of a TimingsEditor through it
+ *
+ * usage: javac -d out src/*.java test/*.java && java -cp out EditHistoryTest
+ * exits with 1 if any check failed
+ */
+public class EditHistoryTest
+{
+    public static void main(String[] args)
+    {
+        Checks checks = new Checks();
+        revisions(checks);
+        revision_limit(checks);
+        editor_undo(checks);
+        checks.exit();
+    }
+
+    /*
+     * each checkpoint ends a revision, undo and redo walk them in both
+     * directions and a new edit drops what was undone
+     */
+    private static void revisions(Checks checks)
+    {
+        ByteBuffer image = ByteBuffer.allocate(3 * EditHistory.PAGE_SIZE);
+        EditHistory history = new EditHistory();
+        ArrayList<byte[]> states = new ArrayList<>();
+        states.add(image.array().clone());
+
+        checks.check("nothing to undo at first", !history.can_undo() && history.undo(image) == null);
+
+        // revision 1 writes two pages, revision 2 one page twice
+        write(history, image, 10, 1);
+        write(history, image, EditHistory.PAGE_SIZE + 10, 2);
+        history.checkpoint();
+        states.add(image.array().clone());
+        write(history, image, 2 * EditHistory.PAGE_SIZE, 3);
+        write(history, image, 2 * EditHistory.PAGE_SIZE + 1, 4);
+        history.checkpoint();
+        states.add(image.array().clone());
+        checks.check("a page is saved once per revision", history.size_in_bytes() == 3 * EditHistory.PAGE_SIZE,
+            history.size_in_bytes());
+
+        // an open revision is undone without a checkpoint
+        write(history, image, 20, 5);
+        checks.check("can't redo with an open revision", !history.can_redo());
+        checks.check("undo the open revision", history.undo(image) != null && Arrays.equals(image.array(), states.get(2)));
+        checks.check("undo revision 2", history.undo(image) != null && Arrays.equals(image.array(), states.get(1)));
+        checks.check("undo revision 1", history.undo(image) != null && Arrays.equals(image.array(), states.get(0)));
+        checks.check("nothing left to undo", !history.can_undo() && history.undo(image) == null);
+
+        checks.check("redo revision 1", history.redo(image) != null && Arrays.equals(image.array(), states.get(1)));
+        checks.check("redo revision 2", history.redo(image) != null && Arrays.equals(image.array(), states.get(2)));
+        checks.check("can still redo the open revision", history.can_redo());
+        history.undo(image);
+
+        write(history, image, 30, 6);
+        checks.check("a new edit drops the undone revisions", !history.can_redo() && history.redo(image) == null);
+        checks.check("undo the new edit", history.undo(image) != null && Arrays.equals(image.array(), states.get(1)));
+    }
+
+    /*
+     * only the newest max_revisions revisions can be undone
+     */
+    private static void revision_limit(Checks checks)
+    {
+        ByteBuffer image = ByteBuffer.allocate(EditHistory.PAGE_SIZE);
+        EditHistory history = new EditHistory(3);
+        for(int i = 1; i <= 5; i++)
+        {
+            write(history, image, i, i);
+            history.checkpoint();
+        }
+
+        int undone = 0;
+        while(history.undo(image) != null)
+            undone++;
+        checks.check("undoes 3 of 5 revisions", undone == 3, undone);
+        checks.check("back to after revision 2", image.get(1) == 1 && image.get(2) == 2 && image.get(3) == 0);
+        checks.check("keeps only the pages of 3 revisions", history.size_in_bytes() == 3 * EditHistory.PAGE_SIZE,
+            history.size_in_bytes());
+    }
+
+    /*
+     * undo and redo of a TimingsEditor bring back the exact images and checksums
+     */
+    private static void editor_undo(Checks checks)
+    {
+        byte[] original = TestRoms.polaris(0x50);
+        TimingsEditor te = new TimingsEditor(original.clone());
+        ArrayList<byte[]> states = new ArrayList<>();
+        states.add(te.to_bytes());
+        for(int i = 1; i <= 4; i++)
+        {
+            byte[] latency = new byte[StrapTable.LATENCY_SIZE];
+            Arrays.fill(latency, (byte)(7 * i));
+            te.set_timings((byte)(i % 2), TestRoms.CLOCKS_MHZ[i] * 100, latency);
+            te.set_field((byte)0, TestRoms.CLOCKS_MHZ[0] * 100, StrapField.CAS_TCL, i);
+            te.checkpoint();
+            states.add(te.to_bytes());
+        }
+
+        boolean ok = true;
+        for(int i = 3; i >= 0; i--)
+            ok &= te.undo() && Arrays.equals(te.to_bytes(), states.get(i));
+        checks.check("editor undoes every edit", ok && !te.can_undo());
+        checks.check("editor undoes to the original ROM", Arrays.equals(te.to_bytes(), original));
+
+        ok = true;
+        for(int i = 1; i <= 4; i++)
+            ok &= te.redo() && Arrays.equals(te.to_bytes(), states.get(i));
+        checks.check("editor redoes every edit", ok && !te.can_redo());
+    }
+
+    private static void write(EditHistory history, ByteBuffer image, int offset, int value)
+    {
+        history.before_write(image, offset, offset + 1);
+        image.put(offset, (byte)value);
+    }
+}
\ No newline at end of file
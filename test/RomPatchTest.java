@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/*
+ * round trips of RomPatch between TestRoms ROMs: create, encode, read back,
+ * apply in memory and in place, and the ROMs and patches it has to refuse
+ *
+ * usage: javac -d out src/*.java test/*.java && java -cp out RomPatchTest
+ * exits with 1 if any check failed
+ */
+public class RomPatchTest
+{
+    public static void main(String[] args) throws IOException
+    {
+        Checks checks = new Checks();
+        byte[] base = TestRoms.polaris(0x60);
+
+        TimingsEditor te = new TimingsEditor(base.clone());
+        StrapPatch.parse("*:1250").apply(te);
+        byte[] target = te.to_bytes();
+
+        round_trip(checks, "editor", base, target, te.create_patch());
+        round_trip(checks, "create", base, target, RomPatch.create(base, target));
+        round_trip(checks, "unchanged", base, base, RomPatch.create(base, base));
+        byte[] longer = Arrays.copyOf(target, target.length + 512);
+        longer[longer.length - 1] = 1;
+        round_trip(checks, "grown", base, longer, RomPatch.create(base, longer));
+        round_trip(checks, "shrunk", base, Arrays.copyOf(target, 0x8000), RomPatch.create(base, Arrays.copyOf(target, 0x8000)));
+
+        RomPatch patch = te.create_patch();
+        checks.check("only the changed bytes are encoded", patch.size_in_bytes() < 1024, patch.size_in_bytes());
+        checks.check("refuses another ROM", refuses(patch, TestRoms.polaris(0x61)));
+        checks.check("refuses the target", refuses(patch, target));
+        checks.check("refuses a truncated base", refuses(patch, Arrays.copyOf(base, base.length - 1)));
+
+        byte[] encoded = patch.to_bytes();
+        checks.check("reads its own encoding", Arrays.equals(RomPatch.read(encoded).to_bytes(), encoded));
+        checks.check("rejects a truncated patch", !reads(Arrays.copyOf(encoded, encoded.length - 1)));
+        checks.check("rejects trailing bytes", !reads(Arrays.copyOf(encoded, encoded.length + 1)));
+        byte[] bad_magic = encoded.clone();
+        bad_magic[0] ^= 1;
+        checks.check("rejects a bad magic", !reads(bad_magic));
+        // the first entry's offset, pointing it past the end of the target
+        byte[] bad_entry = encoded.clone();
+        bad_entry[84 + 3] = 0x7F;
+        checks.check("rejects an entry past the target", !reads(bad_entry));
+
+        in_place(checks, base, target, patch);
+        checks.exit();
+    }
+
+    private static void round_trip(Checks checks, String name, byte[] base, byte[] target, RomPatch patch)
+    {
+        try
+        {
+            RomPatch read = RomPatch.read(patch.to_bytes());
+            byte[] original = base.clone();
+            checks.check(name + ": applies to the base", read.matches(base) && Arrays.equals(read.apply(base), target));
+            checks.check(name + ": the base isn't modified", Arrays.equals(base, original));
+        }
+        catch(IllegalArgumentException e)
+        {
+            checks.check(name, false, e.getMessage());
+        }
+    }
+
+    private static void in_place(Checks checks, byte[] base, byte[] target, RomPatch patch) throws IOException
+    {
+        Path dir = Files.createTempDirectory("rompatch-test");
+        Path rom = dir.resolve("base.rom"), other = dir.resolve("other.rom");
+        Files.write(rom, base);
+        Files.write(other, TestRoms.polaris(0x61));
+
+        patch.apply_in_place(rom);
+        checks.check("apply_in_place writes the target", Arrays.equals(Files.readAllBytes(rom), target));
+        try
+        {
+            patch.apply_in_place(other);
+            checks.check("apply_in_place refuses another ROM", false);
+        }
+        catch(IllegalArgumentException e)
+        {
+            checks.check("apply_in_place refuses another ROM", Arrays.equals(Files.readAllBytes(other), TestRoms.polaris(0x61)),
+                e.getMessage());
+        }
+
+        // shrinking in place truncates the file
+        byte[] shorter = Arrays.copyOf(target, 0x8000);
+        RomPatch.create(target, shorter).apply_in_place(rom);
+        checks.check("apply_in_place truncates", Arrays.equals(Files.readAllBytes(rom), shorter));
+    }
+
+    private static boolean refuses(RomPatch patch, byte[] rom)
+    {
+        try
+        {
+            patch.apply(rom);
+            return false;
+        }
+        catch(IllegalArgumentException e)
+        {
+            return !patch.matches(rom);
+        }
+    }
+
+    private static boolean reads(byte[] bytes)
+    {
+        try
+        {
+            RomPatch.read(bytes);
+            return true;
+        }
+        catch(IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+}
\ No newline at end of file
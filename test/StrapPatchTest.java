@@ -0,0 +1,53 @@
+import java.util.Arrays;
+
+/*
+ * parses strap patch specs around the limits of ulClkRange and applies one to a TestRoms ROM
+ *
+ * usage: javac -d out src/*.java test/*.java && java -cp out StrapPatchTest
+ * exits with 1 if any check failed
+ */
+public class StrapPatchTest
+{
+    public static void main(String[] args)
+    {
+        Checks checks = new Checks();
+
+        checks.check("MAX_MHZ fits in ulClkRange", StrapPatch.MAX_MHZ * 100 <= StrapTable.MAX_CLK_RANGE
+            && (StrapPatch.MAX_MHZ + 1) * 100 > StrapTable.MAX_CLK_RANGE, StrapPatch.MAX_MHZ);
+        checks.check("0:1500", parses("0:1500"));
+        checks.check("*:1500:2000", parses("*:1500:2000"));
+        checks.check("0:" + StrapPatch.MAX_MHZ, parses("0:" + StrapPatch.MAX_MHZ));
+        checks.check("0:1500:" + StrapPatch.MAX_MHZ, parses("0:1500:" + StrapPatch.MAX_MHZ));
+        checks.check("rejects 0:" + (StrapPatch.MAX_MHZ + 1), !parses("0:" + (StrapPatch.MAX_MHZ + 1)));
+        checks.check("rejects 0:1500:" + (StrapPatch.MAX_MHZ + 1), !parses("0:1500:" + (StrapPatch.MAX_MHZ + 1)));
+        // 4195804MHz is 1500MHz + 2^24 in 10kHz
+        checks.check("rejects 0:4195804", !parses("0:4195804"));
+        checks.check("rejects 0:0", !parses("0:0"));
+        checks.check("rejects 0:2000:1500", !parses("0:2000:1500"));
+        checks.check("rejects 256:1500", !parses("256:1500"));
+        checks.check("rejects 0:x", !parses("0:x"));
+
+        // copies 0:1500 onto 1750 and 2000, index 1 is left alone
+        TimingsEditor te = new TimingsEditor(TestRoms.polaris(0));
+        int changed = StrapPatch.parse("0:1500").apply(te);
+        checks.check("0:1500 changes 2 straps", changed == 2, changed);
+        byte[] source = te.get_timings((byte)0, 150000).ucLatency;
+        checks.check("0:2000 is a copy of 0:1500", Arrays.equals(te.get_timings((byte)0, 200000).ucLatency, source));
+        checks.check("1:2000 is unchanged", !Arrays.equals(te.get_timings((byte)1, 200000).ucLatency, source));
+
+        checks.exit();
+    }
+
+    private static boolean parses(String spec)
+    {
+        try
+        {
+            StrapPatch.parse(spec);
+            return true;
+        }
+        catch(IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * small but well formed GDDR5 Polaris ROMs for the tests, real ones can't be shipped
+ * one ATOM_VRAM_MODULE_V8 and straps for indices 0 and 1 at CLOCKS_MHZ, the
+ * straps start past the first EditHistory.PAGE_SIZE page, so editing them never
+ * touches the page the checksum byte is in
+ */
+final class TestRoms
+{
+    static final int SIZE = 0x10000;
+    static final int[] CLOCKS_MHZ = { 400, 800, 1250, 1500, 1750, 2000 };
+    static final String PART_NUMBER = "H5GC8H24AJR";
+
+    private static final int ROM_HEADER = 0x200, MASTER_DATA_TABLE = 0x300, VRAM_INFO = 0x1100;
+
+    /*
+     * returns a ROM whose checksum is fixed, every latency byte of a strap is
+     * seed + its row in the table
+     */
+    static byte[] polaris(int seed)
+    {
+        ByteBuffer rom = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        rom.put(0, (byte)0x55).put(1, (byte)0xAA).put(2, (byte)(SIZE / 512));
+        rom.putShort(0x48, (short)ROM_HEADER);
+
+        // ATOM_ROM_HEADER, usMasterDataTableOffset is at 0x20
+        rom.putShort(ROM_HEADER, (short)36).put(ROM_HEADER + 2, (byte)1).put(ROM_HEADER + 3, (byte)1);
+        rom.put(ROM_HEADER + 4, "ATOM".getBytes(StandardCharsets.US_ASCII));
+        rom.putShort(ROM_HEADER + 0x20, (short)MASTER_DATA_TABLE);
+
+        // ATOM_MASTER_DATA_TABLE, VRAM_Info is the 29th offset
+        rom.putShort(MASTER_DATA_TABLE, (short)74).put(MASTER_DATA_TABLE + 2, (byte)1).put(MASTER_DATA_TABLE + 3, (byte)1);
+        rom.putShort(MASTER_DATA_TABLE + 4 + 28 * 2, (short)VRAM_INFO);
+
+        // ATOM_VRAM_INFO v2.2 with one ATOM_VRAM_MODULE_V8, then the ATOM_INIT_REG_BLOCK
+        final int module = VRAM_INFO + 20, module_size = 44 + 12, reg_index_tbl_size = 8;
+        final int block = module + module_size, straps = block + 4 + reg_index_tbl_size;
+        final int strap_count = 2 * CLOCKS_MHZ.length, end = straps + strap_count * 0x34 + 4;
+
+        rom.putShort(VRAM_INFO, (short)(end - VRAM_INFO)).put(VRAM_INFO + 2, (byte)2).put(VRAM_INFO + 3, (byte)2);
+        rom.putShort(VRAM_INFO + 6, (short)(block - VRAM_INFO));
+        rom.put(VRAM_INFO + 16, (byte)1).put(VRAM_INFO + 18, (byte)8);
+
+        rom.putShort(module + 4, (short)module_size);
+        rom.put(module + 11, (byte)0x51);
+        rom.put(module + 44, PART_NUMBER.getBytes(StandardCharsets.US_ASCII));
+
+        rom.putShort(block, (short)reg_index_tbl_size).putShort(block + 2, (short)0x34);
+        int row = 0;
+        for(int index = 0; index < 2; index++)
+        {
+            for(int mhz : CLOCKS_MHZ)
+            {
+                int offset = straps + row * 0x34, clk_range = mhz * 100;
+                rom.putShort(offset, (short)clk_range).put(offset + 2, (byte)(clk_range >> 16)).put(offset + 3, (byte)index);
+                for(int i = 0; i < 48; i++)
+                    rom.put(offset + 4 + i, (byte)(seed + row));
+                row++;
+            }
+        }
+
+        byte[] bytes = rom.array();
+        bytes[0x21] -= (byte)sum(bytes);
+        return bytes;
+    }
+
+    /*
+     * the byte sum over the range the checksum covers, 0 for a ROM with a fixed checksum
+     */
+    static int sum(byte[] rom)
+    {
+        int sum = 0;
+        for(int i = 0, n = Math.min(Byte.toUnsignedInt(rom[2]) * 512, rom.length); i < n; i++)
+            sum += rom[i];
+
+        return (byte)sum;
+    }
+}
\ No newline at end of file
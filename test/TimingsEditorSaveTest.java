@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/*
+ * saves edits of a mapped ROM in place and to new files and checks every
+ * file it writes has a fixed checksum and matches to_bytes()
+ *
+ * usage: javac -d out src/*.java test/*.java && java -cp out TimingsEditorSaveTest
+ * exits with 1 if any check failed
+ */
+public class TimingsEditorSaveTest
+{
+    public static void main(String[] args) throws IOException
+    {
+        Checks checks = new Checks();
+        Path dir = Files.createTempDirectory("save-test");
+        Path rom = dir.resolve("mapped.rom");
+        Files.write(rom, TestRoms.polaris(0x10));
+
+        TimingsEditor te = new TimingsEditor(rom.toString(), true);
+        for(int edit = 1; edit <= 3; edit++)
+        {
+            // uneven bytes, so no edit changes the sum by a multiple of 256
+            byte[] latency = new byte[StrapTable.LATENCY_SIZE];
+            for(int i = 0; i < latency.length; i++)
+                latency[i] = (byte)(0x40 * edit + i);
+            te.set_timings((byte)0, TestRoms.CLOCKS_MHZ[edit] * 100, latency);
+            te.checkpoint();
+            check_save(checks, te, rom, "in place save " + edit);
+        }
+
+        check_save(checks, te, dir.resolve("save-as.rom"), "save as");
+        checks.check("patch from the saved file", te.create_patch().matches(Files.readAllBytes(rom)));
+
+        // undo across the saves, the checksum byte they left in the image isn't an edit
+        te.undo();
+        check_save(checks, te, dir.resolve("undo.rom"), "save as after undo");
+        te.undo();
+        te.undo();
+        check_save(checks, te, rom, "in place save after undoing everything");
+        checks.check("undone to the original straps", Arrays.equals(
+            TestRoms.polaris(0x10), Files.readAllBytes(rom)));
+        te.redo();
+        check_save(checks, te, dir.resolve("redo.rom"), "save as after redo");
+
+        read_only(checks, dir);
+        checks.exit();
+    }
+
+    /*
+     * a file we can't write still opens mapped and saves to another file
+     * root can write it anyway, then saving in place just works
+     */
+    private static void read_only(Checks checks, Path dir) throws IOException
+    {
+        Path rom = dir.resolve("read-only.rom");
+        Files.write(rom, TestRoms.polaris(0x20));
+        rom.toFile().setWritable(false, false);
+
+        TimingsEditor te = new TimingsEditor(rom.toString(), true);
+        te.set_timings((byte)1, TestRoms.CLOCKS_MHZ[2] * 100, new byte[StrapTable.LATENCY_SIZE]);
+        check_save(checks, te, dir.resolve("read-only-save-as.rom"), "read-only: save as");
+        if(!Files.isWritable(rom))
+        {
+            checks.check("read-only: in place save fails", !te.save_bios(rom.toString()));
+            checks.check("read-only: file unchanged", Arrays.equals(Files.readAllBytes(rom), TestRoms.polaris(0x20)));
+        }
+    }
+
+    private static void check_save(Checks checks, TimingsEditor te, Path path, String name) throws IOException
+    {
+        checks.check(name, te.save_bios(path.toString()));
+
+        byte[] saved = Files.readAllBytes(path);
+        checks.check(name + ": checksum", TestRoms.sum(saved) == 0, "sum " + TestRoms.sum(saved));
+        checks.check(name + ": file matches to_bytes()", Arrays.equals(saved, te.to_bytes()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+
+/*
+ * posts ROMs to a TimingsEditorServer: a TestRoms ROM has to come back patched
+ * exactly like StrapPatch does it locally, also when it's served from the cache,
+ * and malformed ROMs have to get a 400, not a dropped connection
+ *
+ * usage: javac -d out src/*.java test/*.java && java -cp out TimingsEditorServerTest
+ * exits with 1 if any check failed
+ */
+public class TimingsEditorServerTest
+{
+    public static void main(String[] args) throws IOException
+    {
+        Checks checks = new Checks();
+        TimingsEditorServer server = new TimingsEditorServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4);
+        server.start();
+
+        try
+        {
+            String url = "http://localhost:" + server.get_port() + "/patch";
+            byte[] rom = TestRoms.polaris(0x30);
+            byte[] to_2000 = patch_locally(rom, "0:1500"), to_1750 = patch_locally(rom, "0:1500:1750");
+
+            long parsed = parse_count();
+            expect_patched(checks, url, "0:1500", rom, to_2000, 2);
+            checks.check("the first post parses the ROM", parse_count() == parsed + 1);
+            // a different patch of the cached ROM, then the first one again
+            expect_patched(checks, url, "0:1500:1750", rom, to_1750, 1);
+            expect_patched(checks, url, "0:1500", rom, to_2000, 2);
+            checks.check("later posts are served from the cache", parse_count() == parsed + 1);
+            checks.check("the posted ROM isn't modified", Arrays.equals(rom, TestRoms.polaris(0x30)));
+
+            expect_status(checks, url + "?p=0:1500", "empty body", new byte[0], 400);
+            expect_status(checks, url + "?p=0:1500", "2 byte body", new byte[] { 0x55, (byte)0xAA }, 400);
+            expect_status(checks, url + "?p=0:1500", "truncated legacy header", truncated_legacy_header(), 400);
+            expect_status(checks, url + "?p=0:1500", "truncated ATOM_ROM_HEADER", truncated_rom_header(), 400);
+            expect_status(checks, url + "?p=0:1600", "no 1600MHz strap", rom, 400);
+        }
+        finally
+        {
+            server.stop(0);
+        }
+
+        checks.exit();
+    }
+
+    private static byte[] patch_locally(byte[] rom, String spec)
+    {
+        TimingsEditor te = new TimingsEditor(rom.clone());
+        StrapPatch.parse(spec).apply(te);
+
+        return te.to_bytes();
+    }
+
+    /*
+     * the number of ROMs parsed in this JVM, the server runs in it too
+     */
+    private static long parse_count()
+    {
+        return TimingsEditorMetrics.snapshot(TimingsEditorMetrics.Stage.HEADER_SEARCH).count;
+    }
+
+    /*
+     * posts rom with the patch spec and expects the expected bytes back
+     */
+    private static void expect_patched(Checks checks, String url, String spec, byte[] rom, byte[] expected, int straps)
+    {
+        String name = "patch " + spec;
+        try
+        {
+            HttpURLConnection connection = post(url + "?p=" + spec, rom);
+            checks.check(name + ": status", connection.getResponseCode() == 200, connection.getResponseCode());
+            checks.check(name + ": X-Straps-Patched", String.valueOf(straps).equals(connection.getHeaderField("X-Straps-Patched")),
+                connection.getHeaderField("X-Straps-Patched"));
+
+            byte[] patched = read_all(connection.getInputStream());
+            checks.check(name + ": bytes", Arrays.equals(patched, expected));
+            checks.check(name + ": checksum", TestRoms.sum(patched) == 0, "sum " + TestRoms.sum(patched));
+        }
+        catch(IOException e)
+        {
+            checks.check(name, false, e);
+        }
+    }
+
+    private static void expect_status(Checks checks, String url, String name, byte[] body, int status)
+    {
+        try
+        {
+            HttpURLConnection connection = post(url, body);
+            int got = connection.getResponseCode();
+            InputStream in = got >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            String message = in == null ? "" : new String(read_all(in), "UTF-8").trim();
+            checks.check(name, got == status, got + " " + message);
+        }
+        catch(IOException e)
+        {
+            checks.check(name, false, e);
+        }
+    }
+
+    private static HttpURLConnection post(String url, byte[] body) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try(OutputStream out = connection.getOutputStream())
+        {
+            out.write(body);
+        }
+
+        return connection;
+    }
+
+    /*
+     * a legacy header whose ATOM_ROM_HEADER pointer runs past the end
+     */
+    private static byte[] truncated_legacy_header()
+    {
+        byte[] rom = new byte[0x60];
+        rom[0] = 0x55;
+        rom[1] = (byte)0xAA;
+        rom[2] = 1;
+        rom[0x48] = 0x50;
+        return rom;
+    }
+
+    /*
+     * the start of an ATOM_ROM_HEADER (usStructureSize 0x24, revision 1.1) 4 bytes before the end
+     */
+    private static byte[] truncated_rom_header()
+    {
+        byte[] rom = new byte[0x80];
+        rom[0] = 0x55;
+        rom[1] = (byte)0xAA;
+        rom[2] = 1;
+        rom[0x7C] = 0x24;
+        rom[0x7E] = 1;
+        rom[0x7F] = 1;
+        return rom;
+    }
+
+    private static byte[] read_all(InputStream in) throws IOException
+    {
+        try(InputStream stream = in)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            stream.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+}
\ No newline at end of file
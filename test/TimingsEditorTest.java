@@ -0,0 +1,100 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * strap lookups and the running checksum of TimingsEditor on TestRoms ROMs
+ *
+ * usage: javac -d out src/*.java test/*.java && java -cp out TimingsEditorTest
+ * exits with 1 if any check failed
+ */
+public class TimingsEditorTest
+{
+    public static void main(String[] args)
+    {
+        Checks checks = new Checks();
+        strap_lookups(checks);
+        running_checksum(checks);
+        checks.exit();
+    }
+
+    /*
+     * clocks above the 24 bits of ulClkRange must not find the strap their low bits name
+     */
+    private static void strap_lookups(Checks checks)
+    {
+        byte[] original = TestRoms.polaris(0x20);
+        TimingsEditor te = new TimingsEditor(original.clone());
+        byte[] latency = new byte[StrapTable.LATENCY_SIZE];
+        Arrays.fill(latency, (byte)0x5A);
+
+        checks.check("finds 0:1500", te.get_timings((byte)0, 150000) != null);
+        checks.check("finds 1:2000", te.get_strap_offset((byte)1, 200000) != -1);
+        checks.check("no strap at 0:1600", te.get_timings((byte)0, 160000) == null);
+
+        int aliased = 150000 + (1 << 24);
+        checks.check("no strap at 0:1500 + 2^24", te.get_timings((byte)0, aliased) == null);
+        checks.check("negative clock", te.get_strap_offset((byte)0, -1) == -1);
+        checks.check("set_timings rejects 0:1500 + 2^24", !te.set_timings((byte)0, aliased, latency));
+        checks.check("the 1500MHz strap is untouched", Arrays.equals(te.to_bytes(), original));
+        try
+        {
+            te.get_field((byte)0, aliased, StrapField.CAS_TCL);
+            checks.check("get_field rejects 0:1500 + 2^24", false);
+        }
+        catch(IllegalArgumentException e)
+        {
+            checks.check("get_field rejects 0:1500 + 2^24", true, e.getMessage());
+        }
+
+        StrapTable table = te.get_strap_table();
+        checks.check("StrapTable finds 0:1500", table.find((byte)0, 150000) != -1);
+        checks.check("StrapTable doesn't find 0:1500 + 2^24", table.find((byte)0, aliased) == -1);
+    }
+
+    /*
+     * every kind of write keeps the sum up to date, so the image the editor
+     * saves sums to 0 after each of them without summing it again
+     */
+    private static void running_checksum(Checks checks)
+    {
+        TimingsEditor te = new TimingsEditor(TestRoms.polaris(0x40));
+        StrapTable table = te.get_strap_table();
+        Random random = new Random(5);
+        int bad = 0, edits = 0;
+
+        for(; edits < 500; edits++)
+        {
+            int row = random.nextInt(table.size());
+            byte index = table.get_index(row);
+            int clk_range = table.get_clk_range(row);
+            switch(edits % 4)
+            {
+            case 0:
+                byte[] latency = new byte[StrapTable.LATENCY_SIZE];
+                random.nextBytes(latency);
+                te.set_timings(index, clk_range, latency);
+                break;
+            case 1:
+                StrapField field = StrapField.values()[random.nextInt(StrapField.values().length)];
+                te.set_field(index, clk_range, field, field.width() == 32 ? random.nextInt() : random.nextInt(field.max() + 1));
+                break;
+            case 2:
+                te.propagate_strap(new byte[] { index }, clk_range, StrapTable.MAX_CLK_RANGE, null);
+                break;
+            default:
+                if(random.nextBoolean()) te.fix_checksum();
+                else te.undo();
+            }
+
+            if(TestRoms.sum(te.to_bytes()) != 0 || TestRoms.sum(te.snapshot().to_bytes()) != 0)
+                bad++;
+        }
+        checks.check("to_bytes() and snapshot() sum to 0 after " + edits + " edits", bad == 0, bad + " didn't");
+
+        // a fresh parse sums the image itself and has to agree
+        byte[] fixed = te.to_bytes();
+        te.fix_checksum();
+        checks.check("fix_checksum() writes what to_bytes() fixes", Arrays.equals(fixed, te.to_bytes())
+            && Arrays.equals(fixed, new TimingsEditor(fixed.clone()).to_bytes()));
+    }
+}
\ No newline at end of file